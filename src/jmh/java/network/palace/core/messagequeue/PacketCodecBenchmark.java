@@ -0,0 +1,91 @@
+package network.palace.core.messagequeue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import network.palace.core.messagequeue.packets.BroadcastPacket;
+import network.palace.core.messagequeue.packets.LogStatisticPacket;
+import network.palace.core.messagequeue.packets.MQPacket;
+import network.palace.core.messagequeue.packets.MessagePacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding message queue packets in the JSON and binary formats
+ * <p>
+ * Decoding goes through a {@link PacketRegistry} the same way {@link MessageHandler} does for each format. Run with
+ * {@code mvn -Pjmh compile exec:exec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketCodecBenchmark {
+    @Param({"broadcast", "message", "statistic"})
+    private String packet;
+
+    private PacketRegistry registry;
+    private MQPacket value;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        registry = new PacketRegistry();
+        switch (packet) {
+            case "broadcast":
+                value = new BroadcastPacket("Console", "The park will be closing in 5 minutes!");
+                break;
+            case "message":
+                value = new MessagePacket("You have been sent a friend request!", UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+                break;
+            default:
+                HashMap<String, Object> tags = new HashMap<>();
+                tags.put("server", "WDW1");
+                tags.put("type", "park");
+                HashMap<String, Object> fields = new HashMap<>();
+                fields.put("players", 142);
+                fields.put("tps", 19.97);
+                fields.put("memory", 6_442_450_944L);
+                fields.put("time", System.currentTimeMillis());
+                value = new LogStatisticPacket("server_load", tags, fields);
+                break;
+        }
+        json = value.toBytes();
+        binary = value.toBinary();
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return value.toBytes();
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return value.toBinary();
+    }
+
+    @Benchmark
+    public MQPacket decodeJson() {
+        JsonObject object = (JsonObject) new JsonParser().parse(new String(json, StandardCharsets.UTF_8));
+        return registry.decode(object);
+    }
+
+    @Benchmark
+    public MQPacket decodeBinary() {
+        return registry.decode(binary);
+    }
+
+    /**
+     * The size of each format isn't timed, but is printed once so the results can be compared against it
+     */
+    @TearDown
+    public void printSizes() {
+        System.out.println(packet + ": " + json.length + " bytes as JSON, " + binary.length + " bytes as binary");
+    }
+}
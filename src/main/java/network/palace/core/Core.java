@@ -27,10 +27,12 @@ import network.palace.core.mongo.MongoHandler;
 import network.palace.core.npc.SoftNPCManager;
 import network.palace.core.packets.adapters.PlayerInfoAdapter;
 import network.palace.core.packets.adapters.SettingsAdapter;
+import network.palace.core.pathfinding.PathfindingService;
 import network.palace.core.permissions.PermissionManager;
 import network.palace.core.player.CPlayer;
 import network.palace.core.player.CPlayerManager;
 import network.palace.core.player.impl.CorePlayerWorldDownloadProtect;
+import network.palace.core.player.impl.NametagManager;
 import network.palace.core.player.impl.managers.CorePlayerManager;
 import network.palace.core.plugin.PluginInfo;
 import network.palace.core.resource.ResourceManager;
@@ -99,6 +101,8 @@ public class Core extends JavaPlugin {
     private ResourceManager resourceManager;
     private AchievementManager achievementManager;
     private SoftNPCManager softNPCManager;
+    private PathfindingService pathfindingService;
+    private NametagManager nametagManager;
     private CPlayerManager playerManager;
     private CoreCommandMap commandMap;
     private HonorManager honorManager;
@@ -174,12 +178,14 @@ public class Core extends JavaPlugin {
         mongoHandler = new MongoHandler();
         // Managers
         languageManager = new LanguageManager();
+        nametagManager = new NametagManager();
         playerManager = new CorePlayerManager();
         permissionManager = new PermissionManager();
         resourceManager = new ResourceManager();
         economyManager = new EconomyManager();
         achievementManager = new AchievementManager();
         softNPCManager = new SoftNPCManager();
+        pathfindingService = new PathfindingService();
         // Setup the honor manager
         honorManager = new HonorManager();
         honorManager.provideMappings(mongoHandler.getHonorMappings());
@@ -244,10 +250,12 @@ public class Core extends JavaPlugin {
         registerCommand(new FlyCommand());
         registerCommand(new HelpopCommand());
         registerCommand(new HonorCommand());
+        registerCommand(new IndexesCommand());
         registerCommand(new ListCommand());
         registerCommand(new LockArmorStandCommand());
         registerCommand(new MsgCommand());
         registerCommand(new MyHonorCommand());
+        registerCommand(new NPCsCommand());
         registerCommand(new OnlineCommand());
         registerCommand(new PermissionCommand());
         registerCommand(new PingCommand());
@@ -258,6 +266,7 @@ public class Core extends JavaPlugin {
         registerCommand(new TagToggleCommand());
         registerCommand(new TokenCommand());
         registerCommand(new TopHonorCommand());
+        registerCommand(new TransactionsCommand());
         // New Commands
         registerCommand(new DevCommand());
         registerCommand(new BankCommand());
@@ -290,6 +299,11 @@ public class Core extends JavaPlugin {
             e.printStackTrace();
             Core.logMessage("Core", "Error announcing server shutdown to message queue");
         }
+        // Publishes the shutdown announcement before closing the connections
+        if (messageHandler != null) messageHandler.shutdown();
+        pathfindingService.shutdown();
+        getMongoHandler().flushPlayerCache();
+        getMongoHandler().async().shutdown(5000);
         logMessage("Core", ChatColor.DARK_RED + "Disabled");
     }
 
@@ -450,6 +464,15 @@ public class Core extends JavaPlugin {
         return getInstance().achievementManager;
     }
 
+    /**
+     * Gets nametag manager.
+     *
+     * @return the nametag manager
+     */
+    public static NametagManager getNametagManager() {
+        return getInstance().nametagManager;
+    }
+
     /**
      * Gets soft npc manager.
      *
@@ -459,6 +482,15 @@ public class Core extends JavaPlugin {
         return getInstance().softNPCManager;
     }
 
+    /**
+     * Gets pathfinding service.
+     *
+     * @return the pathfinding service
+     */
+    public static PathfindingService getPathfindingService() {
+        return getInstance().pathfindingService;
+    }
+
     /**
      * Gets sql util.
      *
@@ -0,0 +1,55 @@
+package network.palace.core.commands;
+
+import network.palace.core.Core;
+import network.palace.core.command.CommandException;
+import network.palace.core.command.CommandMeta;
+import network.palace.core.command.CoreCommand;
+import network.palace.core.mongo.MongoIndexManager;
+import network.palace.core.player.Rank;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+/**
+ * Show the query plans of the database's hot queries, or create missing indexes and audit them again
+ */
+@CommandMeta(description = "Audit database indexes", rank = Rank.DEVELOPER)
+public class IndexesCommand extends CoreCommand {
+
+    public IndexesCommand() {
+        super("indexes");
+    }
+
+    @Override
+    protected void handleCommandUnspecific(CommandSender sender, String[] args) throws CommandException {
+        MongoIndexManager manager = Core.getMongoHandler().getIndexManager();
+        if (args.length == 1 && args[0].equalsIgnoreCase("audit")) {
+            sender.sendMessage(ChatColor.YELLOW + "Creating missing indexes and auditing queries...");
+            Core.runTaskAsynchronously(Core.getInstance(), () -> {
+                int created = manager.ensureIndexes();
+                sender.sendMessage(ChatColor.YELLOW + "Created " + created + " indexes.");
+                show(sender, manager.audit());
+            });
+            return;
+        }
+        if (args.length != 0) {
+            sender.sendMessage(ChatColor.RED + "/indexes <audit>");
+            return;
+        }
+        show(sender, manager.getLastAudit());
+    }
+
+    private void show(CommandSender sender, List<MongoIndexManager.QueryAudit> audit) {
+        if (audit.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + "No audit has been run yet, use /indexes audit");
+            return;
+        }
+        long scans = audit.stream().filter(a -> !a.isIndexed()).count();
+        sender.sendMessage((scans == 0 ? ChatColor.GREEN : ChatColor.RED) + "" + scans + " of " + audit.size() + " queries aren't using an index:");
+        for (MongoIndexManager.QueryAudit a : audit) {
+            sender.sendMessage((a.isIndexed() ? ChatColor.GREEN : ChatColor.RED) + a.getName() + ChatColor.GRAY +
+                    " (" + a.getCollection() + "): " + a.getPlan());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package network.palace.core.commands;
+
+import network.palace.core.Core;
+import network.palace.core.command.CommandException;
+import network.palace.core.command.CommandMeta;
+import network.palace.core.command.CoreCommand;
+import network.palace.core.npc.NPCMovementEngine;
+import network.palace.core.npc.NPCRegistry;
+import network.palace.core.npc.NPCTracker;
+import network.palace.core.player.Rank;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Show how many NPCs each plugin has spawned and how long the NPC tracker is taking, or the NPCs plugins leaked when
+ * they were disabled
+ */
+@CommandMeta(description = "Show NPC counts, tracker timings and leaks", rank = Rank.DEVELOPER)
+public class NPCsCommand extends CoreCommand {
+
+    public NPCsCommand() {
+        super("npcs");
+    }
+
+    @Override
+    protected void handleCommandUnspecific(CommandSender sender, String[] args) throws CommandException {
+        NPCRegistry registry = Core.getSoftNPCManager().getRegistry();
+        if (args.length == 1 && args[0].equalsIgnoreCase("leaks")) {
+            if (registry.getLeaks().isEmpty()) {
+                sender.sendMessage(ChatColor.GREEN + "No plugin has left NPCs spawned after disabling.");
+                return;
+            }
+            for (NPCRegistry.Leak leak : registry.getLeaks()) {
+                sender.sendMessage(ChatColor.RED + leak.getPlugin() + ChatColor.GRAY + " left " + leak.getCount() +
+                        " spawned " + leak.getTypes() + " (" + (System.currentTimeMillis() - leak.getTime()) / 1000 + "s ago)");
+            }
+            return;
+        }
+        if (args.length != 0) {
+            sender.sendMessage(ChatColor.RED + "/npcs <leaks>");
+            return;
+        }
+        sender.sendMessage(ChatColor.GREEN + "Spawned NPCs: " + ChatColor.YELLOW + registry.getSpawned().size() +
+                ChatColor.GRAY + " " + registry.getCounts());
+        NPCTracker tracker = Core.getSoftNPCManager().getTracker();
+        sender.sendMessage(ChatColor.GREEN + "NPC tracker " + ChatColor.GRAY + "(every " + tracker.getInterval() + " ticks, " +
+                tracker.getTrackedPlayers() + " players)");
+        sender.sendMessage(ChatColor.GREEN + "Last run: " + ChatColor.YELLOW + millis(tracker.getLastTime()) + "ms" +
+                ChatColor.GRAY + " (" + tracker.getLastSpawned() + " spawned, " + tracker.getLastDestroyed() + " destroyed)");
+        sender.sendMessage(ChatColor.GREEN + "Average: " + ChatColor.YELLOW + millis(tracker.getAverageTime()) + "ms" +
+                ChatColor.GREEN + " Max: " + ChatColor.YELLOW + millis(tracker.getMaxTime()) + "ms");
+        NPCMovementEngine movement = Core.getSoftNPCManager().getMovementEngine();
+        sender.sendMessage(ChatColor.GREEN + "Moving: " + ChatColor.YELLOW + movement.getMoving() + ChatColor.GRAY +
+                " (" + movement.getLastPackets() + "/" + movement.getPacketBudget() + " packets last tick, " +
+                movement.getLastSkipped() + " over budget)");
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+}
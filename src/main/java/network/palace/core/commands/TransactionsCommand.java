@@ -0,0 +1,65 @@
+package network.palace.core.commands;
+
+import network.palace.core.Core;
+import network.palace.core.command.CommandException;
+import network.palace.core.command.CommandMeta;
+import network.palace.core.command.CoreCommand;
+import network.palace.core.economy.currency.TransactionRecord;
+import network.palace.core.mongo.TransactionQuery;
+import network.palace.core.player.Rank;
+import network.palace.core.utils.MiscUtil;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * View a player's transaction history, or migrate old transaction arrays into the transaction ledger
+ */
+@CommandMeta(description = "View transaction history", rank = Rank.DEVELOPER)
+public class TransactionsCommand extends CoreCommand {
+    private static final int PAGE_SIZE = 10;
+
+    public TransactionsCommand() {
+        super("transactions");
+    }
+
+    @Override
+    protected void handleCommandUnspecific(CommandSender sender, String[] args) throws CommandException {
+        if (args.length == 1 && args[0].equalsIgnoreCase("migrate")) {
+            sender.sendMessage(ChatColor.YELLOW + "Migrating transactions into the ledger...");
+            Core.runTaskAsynchronously(Core.getInstance(), () -> Core.getMongoHandler().getTransactionLedger()
+                    .migrate(message -> sender.sendMessage(ChatColor.YELLOW + message)));
+            return;
+        }
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !MiscUtil.checkIfInt(args[1]))) {
+            sender.sendMessage(ChatColor.RED + "/transactions [Player] <Page>");
+            sender.sendMessage(ChatColor.RED + "/transactions migrate");
+            return;
+        }
+        String user = args[0];
+        int page = args.length == 2 ? Math.max(1, Integer.parseInt(args[1])) : 1;
+        Core.runTaskAsynchronously(Core.getInstance(), () -> {
+            UUID uuid = Core.getMongoHandler().usernameToUUID(user);
+            if (uuid == null) {
+                sender.sendMessage(ChatColor.RED + "Player not found!");
+                return;
+            }
+            List<TransactionRecord> history = Core.getMongoHandler().getTransactionLedger().getHistory(TransactionQuery.player(uuid), page, PAGE_SIZE);
+            SimpleDateFormat format = new SimpleDateFormat("MM/dd/yy HH:mm");
+            sender.sendMessage(ChatColor.GREEN + "Transactions for " + user + " (Page " + page + "):");
+            if (history.isEmpty()) {
+                sender.sendMessage(ChatColor.GRAY + "No transactions found.");
+                return;
+            }
+            for (TransactionRecord record : history) {
+                sender.sendMessage(ChatColor.AQUA + format.format(new Date(record.getTimestamp() * 1000)) + " " +
+                        (record.getAmount() < 0 ? ChatColor.RED : ChatColor.GREEN) + record.getAmount() + " " + record.getType() +
+                        ChatColor.GRAY + " (" + record.getSource() + " on " + record.getServer() + ")");
+            }
+        });
+    }
+}
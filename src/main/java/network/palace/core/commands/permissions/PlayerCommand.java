@@ -120,9 +120,7 @@ public class PlayerCommand extends CoreCommand {
                 Core.getMongoHandler().setRank(uuid, next);
                 if (player != null) {
                     player.setRank(next);
-                    for (CPlayer tp : Core.getPlayerManager().getOnlinePlayers()) {
-                        Core.getPlayerManager().displayRank(player);
-                    }
+                    Core.getPlayerManager().displayRank(player);
                 }
                 String source = sender instanceof Player ? sender.getName() : "Console on " + Core.getInstanceName();
                 try {
@@ -170,9 +168,7 @@ public class PlayerCommand extends CoreCommand {
                 tags.add(tag.getDBName());
                 if (player != null) {
                     player.addTag(tag);
-                    for (CPlayer tp : Core.getPlayerManager().getOnlinePlayers()) {
-                        Core.getPlayerManager().displayRank(player);
-                    }
+                    Core.getPlayerManager().displayRank(player);
                 }
                 String source = sender instanceof Player ? sender.getName() : "Console on " + Core.getInstanceName();
                 try {
@@ -201,9 +197,7 @@ public class PlayerCommand extends CoreCommand {
                 tags.remove(tag.getDBName());
                 if (player != null) {
                     player.removeTag(tag);
-                    for (CPlayer tp : Core.getPlayerManager().getOnlinePlayers()) {
-                        Core.getPlayerManager().displayRank(player);
-                    }
+                    Core.getPlayerManager().displayRank(player);
                 }
                 String source = sender instanceof Player ? sender.getName() : "Console on " + Core.getInstanceName();
                 try {
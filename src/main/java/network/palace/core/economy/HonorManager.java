@@ -14,7 +14,7 @@ import java.util.*;
  * @since 6/6/2017
  */
 public class HonorManager {
-    private final Map<UUID, Transaction> transactions = new HashMap<>();
+    private final TransactionQueue transactions;
     private final Set<HonorMapping> mappings = new HashSet<>();
     private final TreeSet<Integer> honorMappings = new TreeSet<>();
     private int highest = 0;
@@ -23,56 +23,20 @@ public class HonorManager {
      * Instantiates a new Honor manager.
      */
     public HonorManager() {
-        Core.runTaskTimer(() -> {
-            boolean started = false;
-            try {
-                // Process at most 20 transactions per second
-                Map<UUID, Transaction> localMap = getPartOfMap(transactions, 10);
-                started = true;
-                // Remove payments about to be processed from main transactions map
-                localMap.keySet().forEach(transactions::remove);
-                // Asynchronously handle database calls for localMap payments
-                Core.runTaskAsynchronously(() -> {
-                    for (Map.Entry<UUID, Transaction> entry : new HashSet<>(localMap.entrySet())) {
-                        Transaction transaction = entry.getValue();
-                        if (transaction.getAmount() == 0) {
-                            if (transaction.getCallback() != null)
-                                transaction.getCallback().handled(false, "Cannot process transaction of amount 0.");
-                            continue;
-                        }
-                        try {
-                            Core.getMongoHandler().addHonor(transaction.getPlayerId(), transaction.getAmount(), transaction.getSource());
-                            if (transaction.getCallback() != null) transaction.getCallback().handled(true, "");
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            if (transaction.getCallback() != null)
-                                transaction.getCallback().handled(false, "An error occurred while contacting the database to process this transaction.");
-                        }
-                    }
+        transactions = new TransactionQueue((batch, report) -> {
+            Set<UUID> changed = new HashSet<>();
+            batch.forEach(transaction -> changed.add(transaction.getPlayerId()));
+            changed.forEach(uuid -> {
+                Integer honor = report.getBalance(uuid, "honor");
+                if (honor == null) return;
+                Core.runTask(() -> {
+                    CPlayer tp = Core.getPlayerManager().getPlayer(uuid);
+                    if (tp == null) return;
+                    tp.loadHonor(honor);
+                    displayHonor(tp);
                 });
-            } catch (Exception e) {
-                e.printStackTrace();
-                if (started) {
-                    transactions.values().forEach(transaction -> {
-                        if (transaction.getCallback() != null)
-                            transaction.getCallback().handled(false, "An error occurred while processing this transaction.");
-                    });
-                    transactions.clear();
-                }
-            }
-        }, 0L, 20L);
-    }
-
-    private Map<UUID, Transaction> getPartOfMap(Map<UUID, Transaction> map, int amount) {
-        if (map.size() <= amount) return new HashMap<>(map);
-        Map<UUID, Transaction> mapPart = new HashMap<>();
-        int i = 0;
-        for (Map.Entry<UUID, Transaction> entry : map.entrySet()) {
-            if (i >= amount) break;
-            mapPart.put(entry.getKey(), entry.getValue());
-            i++;
-        }
-        return mapPart;
+            });
+        });
     }
 
     /**
@@ -86,7 +50,7 @@ public class HonorManager {
      */
     public void addTransaction(UUID uuid, int amount, String source, TransactionCallback callback) {
         Transaction transaction = new Transaction(uuid, null, amount, source, callback);
-        transactions.put(transaction.getPaymentId(), transaction);
+        transactions.add(transaction);
     }
 
     /**
@@ -0,0 +1,88 @@
+package network.palace.core.economy;
+
+import network.palace.core.Core;
+import network.palace.core.economy.currency.Transaction;
+import network.palace.core.mongo.TransactionReport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Queue of pending transactions, drained once per second into a single bulk write
+ *
+ * @see network.palace.core.mongo.MongoHandler#processTransactions(List)
+ */
+class TransactionQueue {
+    private final Map<UUID, Transaction> transactions = new ConcurrentHashMap<>();
+    private final AtomicBoolean processing = new AtomicBoolean(false);
+
+    /**
+     * Instantiates a new transaction queue
+     *
+     * @param onProcessed called asynchronously with the transactions of each applied batch and its report
+     */
+    TransactionQueue(BiConsumer<List<Transaction>, TransactionReport> onProcessed) {
+        Core.runTaskTimerAsynchronously(() -> {
+            // Don't start another batch while the previous one is still waiting on the database
+            if (transactions.isEmpty() || !processing.compareAndSet(false, true)) return;
+            try {
+                process(onProcessed);
+            } finally {
+                processing.set(false);
+            }
+        }, 0L, 20L);
+    }
+
+    /**
+     * Add a transaction to the queue
+     *
+     * @param transaction the transaction
+     */
+    void add(Transaction transaction) {
+        transactions.put(transaction.getPaymentId(), transaction);
+    }
+
+    private void process(BiConsumer<List<Transaction>, TransactionReport> onProcessed) {
+        List<Transaction> batch = new ArrayList<>();
+        for (UUID paymentId : new ArrayList<>(transactions.keySet())) {
+            Transaction transaction = transactions.remove(paymentId);
+            if (transaction == null) continue;
+            if (transaction.getAmount() == 0) {
+                if (transaction.getCallback() != null)
+                    transaction.getCallback().handled(false, "Cannot process transaction of amount 0.");
+                continue;
+            }
+            batch.add(transaction);
+        }
+        if (batch.isEmpty()) return;
+        TransactionReport report;
+        try {
+            report = Core.getMongoHandler().processTransactions(batch);
+        } catch (Exception e) {
+            e.printStackTrace();
+            batch.forEach(transaction -> {
+                if (transaction.getCallback() != null)
+                    transaction.getCallback().handled(false, "An error occurred while contacting the database to process this transaction.");
+            });
+            return;
+        }
+        for (Transaction transaction : batch) {
+            if (transaction.getCallback() == null) continue;
+            if (report.isApplied(transaction)) {
+                transaction.getCallback().handled(true, "");
+            } else {
+                transaction.getCallback().handled(false, "An error occurred while processing this transaction.");
+            }
+        }
+        try {
+            onProcessed.accept(batch, report);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
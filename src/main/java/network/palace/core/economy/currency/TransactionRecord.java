@@ -0,0 +1,38 @@
+package network.palace.core.economy.currency;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.Document;
+
+import java.util.UUID;
+
+/**
+ * A transaction stored in the transaction ledger
+ */
+@AllArgsConstructor
+public class TransactionRecord {
+    @Getter private final UUID uuid;
+    @Getter private final int amount;
+    /**
+     * The currency name, or 'honor'
+     */
+    @Getter private final String type;
+    @Getter private final String source;
+    @Getter private final String server;
+    /**
+     * Unix time in seconds
+     */
+    @Getter private final long timestamp;
+
+    /**
+     * Create a record from a ledger document
+     *
+     * @param doc the document
+     * @return the record
+     */
+    public static TransactionRecord fromDocument(Document doc) {
+        return new TransactionRecord(UUID.fromString(doc.getString("uuid")), ((Number) doc.get("amount")).intValue(),
+                doc.getString("type"), doc.getString("source"), doc.getString("server"),
+                ((Number) doc.getOrDefault("timestamp", 0L)).longValue());
+    }
+}
@@ -1,12 +1,32 @@
 package network.palace.core.events;
 
 import com.google.gson.JsonObject;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import network.palace.core.messagequeue.packets.MQPacket;
 
-@AllArgsConstructor
 public class IncomingMessageEvent extends CoreEvent {
     @Getter private final int id;
-    @Getter private final JsonObject packet;
+    private JsonObject packet;
+    private final MQPacket decoded;
+
+    public IncomingMessageEvent(int id, JsonObject packet) {
+        this.id = id;
+        this.packet = packet;
+        this.decoded = null;
+    }
+
+    /**
+     * Create the event for a packet received in the binary format, whose JSON is only created if a listener asks for it
+     *
+     * @param packet the decoded packet
+     */
+    public IncomingMessageEvent(MQPacket packet) {
+        this.id = packet.getId();
+        this.decoded = packet;
+    }
+
+    public JsonObject getPacket() {
+        if (packet == null && decoded != null) packet = decoded.getJSON();
+        return packet;
+    }
 }
@@ -0,0 +1,141 @@
+package network.palace.core.messagequeue;
+
+import com.google.gson.JsonObject;
+import com.rabbitmq.client.Channel;
+import lombok.Getter;
+import network.palace.core.Core;
+import network.palace.core.events.IncomingMessageEvent;
+import network.palace.core.messagequeue.packets.MQPacket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands messages received on RabbitMQ's threads over to the main thread
+ * <p>
+ * Messages are decoded and passed to async handlers when they're received, then queued for the main thread, which
+ * handles as many as fit in its time budget each tick. Messages are only acknowledged once they've been handled, so
+ * with a prefetch limit on each channel the broker stops sending when the server falls behind. If the queue fills up
+ * anyway, messages are rejected and counted as dropped.
+ */
+public final class InboundQueue {
+    private final PacketRegistry registry;
+    private final BlockingQueue<Inbound> queue;
+    @Getter private final int capacity;
+    @Getter private final int prefetch;
+    private final long budget;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    @Getter private int lastHandled = 0;
+    @Getter private long lastTime = 0;
+
+    InboundQueue(PacketRegistry registry) {
+        this.registry = registry;
+        capacity = Math.max(1, Core.getCoreConfig().getInt("rabbitmq.inbound-capacity", 1000));
+        prefetch = Math.max(1, Core.getCoreConfig().getInt("rabbitmq.prefetch", 100));
+        budget = Core.getCoreConfig().getLong("rabbitmq.inbound-budget", 2) * 1_000_000;
+        queue = new ArrayBlockingQueue<>(capacity);
+        Core.runTaskTimer(Core.getInstance(), this::drain, 1L, 1L);
+    }
+
+    /**
+     * Receive a message, called on the consumer's thread
+     *
+     * @param channel     the channel the message was received on, which must not auto-acknowledge
+     * @param deliveryTag the message's delivery tag
+     * @param object      the message
+     * @throws Exception if the message couldn't be acknowledged
+     */
+    void receive(Channel channel, long deliveryTag, JsonObject object) throws Exception {
+        int id = object.get("id").getAsInt();
+        MQPacket packet = registry.hasHandlers(id) ? registry.decode(object) : null;
+        enqueue(channel, deliveryTag, id, object, packet);
+    }
+
+    /**
+     * Receive a message sent in the binary format, called on the consumer's thread
+     *
+     * @param channel     the channel the message was received on, which must not auto-acknowledge
+     * @param deliveryTag the message's delivery tag
+     * @param packet      the decoded message
+     * @throws Exception if the message couldn't be acknowledged
+     */
+    void receive(Channel channel, long deliveryTag, MQPacket packet) throws Exception {
+        enqueue(channel, deliveryTag, packet.getId(), null, packet);
+    }
+
+    private void enqueue(Channel channel, long deliveryTag, int id, JsonObject object, MQPacket packet) throws Exception {
+        received.incrementAndGet();
+        if (packet != null) registry.dispatchAsync(packet);
+        if (!queue.offer(new Inbound(channel, deliveryTag, id, object, packet))) {
+            dropped.incrementAndGet();
+            Core.logMessage("MessageHandler", "Inbound queue is full, dropping packet " + id);
+            channel.basicReject(deliveryTag, false);
+        }
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        int handled = 0;
+        // Messages are handled in the order they arrived, so each channel can acknowledge everything up to its latest
+        Map<Channel, Long> acks = new HashMap<>();
+        Inbound inbound;
+        while ((handled == 0 || System.nanoTime() - start < budget) && (inbound = queue.poll()) != null) {
+            handled++;
+            try {
+                if (inbound.packet != null) registry.dispatchMain(inbound.packet);
+                IncomingMessageEvent event = inbound.object != null ? new IncomingMessageEvent(inbound.id, inbound.object) : new IncomingMessageEvent(inbound.packet);
+                event.call();
+            } catch (Exception e) {
+                Core.logMessage("MessageHandler", "Error processing IncomingMessageEvent for incoming packet " + inbound.id);
+                e.printStackTrace();
+            }
+            acks.put(inbound.channel, inbound.deliveryTag);
+        }
+        acks.forEach((channel, tag) -> {
+            if (!channel.isOpen()) return;
+            try {
+                channel.basicAck(tag, true);
+            } catch (Exception e) {
+                Core.logMessage("MessageHandler", "Error acknowledging messages: " + e.getMessage());
+                e.printStackTrace();
+            }
+        });
+        lastHandled = handled;
+        lastTime = System.nanoTime() - start;
+    }
+
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private static class Inbound {
+        private final Channel channel;
+        private final long deliveryTag;
+        private final int id;
+        // Null if the message was sent in the binary format
+        private final JsonObject object;
+        // The decoded packet, if it has handlers or was sent in the binary format
+        private final MQPacket packet;
+
+        private Inbound(Channel channel, long deliveryTag, int id, JsonObject object, MQPacket packet) {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+            this.id = id;
+            this.object = object;
+            this.packet = packet;
+        }
+    }
+}
@@ -2,31 +2,142 @@ package network.palace.core.messagequeue;
 
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
+import lombok.AccessLevel;
 import lombok.Getter;
 import network.palace.core.Core;
+import network.palace.core.messagequeue.packets.BinaryPacket;
+import network.palace.core.messagequeue.packets.MQPacket;
 
 import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeoutException;
 
 @Getter
 public class MessageClient {
-    private final Channel channel;
+    private final ConnectionType type;
+    private volatile Channel channel;
     private final String name;
     private final boolean queue;
+    // The exchange type, or null for a queue
+    private final String exchangeType;
+    private final boolean durable;
+    // Whether every consumer of this exchange or queue understands the binary format
+    private final boolean binary;
+    // Messages waiting to be confirmed by the broker, by publish sequence number
+    @Getter(AccessLevel.NONE) private final NavigableMap<Long, CompletableFuture<Void>> unconfirmed = new ConcurrentSkipListMap<>();
 
     public MessageClient(ConnectionType type, String exchange, String exchangeType) throws Exception {
         queue = false;
-        this.channel = Core.getMessageHandler().getConnection(type).createChannel();
+        this.type = type;
         this.name = exchange;
-        channel.exchangeDeclare(exchange, exchangeType);
+        this.exchangeType = exchangeType;
+        this.durable = false;
+        this.binary = isBinary(exchange);
+        this.channel = open();
+        Core.getMessageHandler().getTopology().addClient(this);
     }
 
     public MessageClient(ConnectionType type, String queueName, boolean durable) throws Exception {
         queue = true;
-        this.channel = Core.getMessageHandler().getConnection(type).createChannel();
+        this.type = type;
         this.name = queueName;
-        // queueName, durable, exclusive, autoDelete, args
-        channel.queueDeclare(queueName, durable, false, false, null);
+        this.exchangeType = null;
+        this.durable = durable;
+        this.binary = isBinary(queueName);
+        this.channel = open();
+        Core.getMessageHandler().getTopology().addClient(this);
+    }
+
+    /**
+     * Open a channel and declare this client's exchange or queue on it
+     *
+     * @return the channel
+     */
+    private Channel open() throws Exception {
+        Channel channel = Core.getMessageHandler().getConnection(type).createChannel();
+        if (queue) {
+            // queueName, durable, exclusive, autoDelete, args
+            channel.queueDeclare(name, durable, false, false, null);
+        } else {
+            channel.exchangeDeclare(name, exchangeType);
+        }
+        enableConfirms(channel);
+        return channel;
+    }
+
+    /**
+     * Replace this client's channel if it has been closed, for example after the connection was lost
+     *
+     * @throws Exception if the channel couldn't be opened
+     */
+    synchronized void reopen() throws Exception {
+        if (channel.isOpen()) return;
+        channel = open();
+    }
+
+    private void enableConfirms(Channel channel) throws IOException {
+        if (!Core.getMessageHandler().getPublisher().isConfirms()) return;
+        channel.confirmSelect();
+        channel.addConfirmListener((tag, multiple) -> confirmed(tag, multiple, null),
+                (tag, multiple) -> confirmed(tag, multiple, new IOException("Message was rejected by the broker")));
+        channel.addShutdownListener(e -> {
+            if (!unconfirmed.isEmpty()) {
+                Core.logMessage("MessageHandler", unconfirmed.size() + " messages published to " + name + " weren't confirmed before the channel closed");
+            }
+            for (CompletableFuture<Void> future : unconfirmed.values()) future.completeExceptionally(e);
+            unconfirmed.clear();
+        });
+    }
+
+    private void confirmed(long tag, boolean multiple, Exception error) {
+        Collection<CompletableFuture<Void>> futures;
+        if (multiple) {
+            NavigableMap<Long, CompletableFuture<Void>> confirmed = unconfirmed.headMap(tag, true);
+            futures = new ArrayList<>(confirmed.values());
+            confirmed.clear();
+        } else {
+            CompletableFuture<Void> future = unconfirmed.remove(tag);
+            futures = future == null ? Collections.emptyList() : Collections.singletonList(future);
+        }
+        if (error != null && !futures.isEmpty()) {
+            Core.logMessage("MessageHandler", futures.size() + " messages published to " + name + " were rejected by the broker");
+        }
+        for (CompletableFuture<Void> future : futures) {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Publish a packet, in the binary format if this client's consumers understand it and the packet supports it
+     *
+     * @param packet     the packet
+     * @param routingKey the routing key
+     * @return a future completed when the packet is published, or confirmed if publisher confirms are enabled
+     */
+    public CompletableFuture<Void> publish(MQPacket packet, String routingKey) {
+        if (binary && packet instanceof BinaryPacket) {
+            return publish(packet.toBinary(), routingKey, MessageHandler.BINARY_PROPS);
+        } else {
+            return publish(packet.toBytes(), routingKey, MessageHandler.JSON_PROPS);
+        }
+    }
+
+    /**
+     * Queue a message to be published
+     *
+     * @param bytes      the message
+     * @param routingKey the routing key
+     * @param props      the message properties
+     * @return a future completed when the message is published, or confirmed if publisher confirms are enabled
+     */
+    public CompletableFuture<Void> publish(byte[] bytes, String routingKey, AMQP.BasicProperties props) {
+        return Core.getMessageHandler().getPublisher().publish(this, bytes, routingKey, props);
     }
 
     public void basicPublish(byte[] bytes) throws IOException {
@@ -38,14 +149,36 @@ public class MessageClient {
     }
 
     public void basicPublish(byte[] bytes, String routingKey, AMQP.BasicProperties props) throws IOException {
-        if (queue) {
-            channel.basicPublish(routingKey, name, props, bytes);
-        } else {
-            channel.basicPublish(name, routingKey, props, bytes);
+        publish(bytes, routingKey, props);
+    }
+
+    /**
+     * Publish a message on this client's channel, called only by the publisher thread
+     *
+     * @param future completed when the broker confirms the message, or null if confirms are disabled
+     */
+    void send(byte[] bytes, String routingKey, AMQP.BasicProperties props, CompletableFuture<Void> future) throws IOException {
+        Channel channel = this.channel;
+        long sequence = channel.getNextPublishSeqNo();
+        if (future != null) unconfirmed.put(sequence, future);
+        try {
+            if (queue) {
+                channel.basicPublish(routingKey, name, props, bytes);
+            } else {
+                channel.basicPublish(name, routingKey, props, bytes);
+            }
+        } catch (IOException e) {
+            unconfirmed.remove(sequence);
+            throw e;
         }
     }
 
+    private static boolean isBinary(String name) {
+        return Core.getCoreConfig().getStringList("rabbitmq.binary").contains(name);
+    }
+
     public void close() throws IOException, TimeoutException {
-        channel.close();
+        Core.getMessageHandler().getTopology().removeClient(this);
+        if (channel.isOpen()) channel.close();
     }
 }
@@ -3,9 +3,9 @@ package network.palace.core.messagequeue;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.rabbitmq.client.*;
+import lombok.Getter;
 import net.md_5.bungee.api.ChatColor;
 import network.palace.core.Core;
-import network.palace.core.events.IncomingMessageEvent;
 import network.palace.core.messagequeue.packets.*;
 import network.palace.core.player.CPlayer;
 import network.palace.core.player.Rank;
@@ -16,19 +16,43 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MessageHandler {
-    public static final AMQP.BasicProperties JSON_PROPS = new AMQP.BasicProperties.Builder().contentEncoding("application/json").build();
+    public static final String JSON_CONTENT_TYPE = "application/json";
+    // Peers that don't set a content type are sending JSON
+    public static final String BINARY_CONTENT_TYPE = "application/x-palace-packet";
+    public static final AMQP.BasicProperties JSON_PROPS = new AMQP.BasicProperties.Builder().contentEncoding(JSON_CONTENT_TYPE).contentType(JSON_CONTENT_TYPE).build();
+    public static final AMQP.BasicProperties BINARY_PROPS = new AMQP.BasicProperties.Builder().contentType(BINARY_CONTENT_TYPE).build();
 
-    public Connection PUBLISHING_CONNECTION, CONSUMING_CONNECTION;
+    public volatile Connection PUBLISHING_CONNECTION, CONSUMING_CONNECTION;
     public MessageClient ALL_PROXIES, ALL_MC, STATISTICS, PROXY_DIRECT, MC_DIRECT, BOT;
 
     public final HashMap<String, MessageClient> permanentClients = new HashMap<>();
 
+    @Getter private final PacketRegistry packetRegistry = new PacketRegistry();
+    @Getter private final InboundQueue inboundQueue = new InboundQueue(packetRegistry);
+    @Getter private final Publisher publisher = new Publisher();
+    @Getter private final Topology topology = new Topology();
+    // Clients for exchanges messages are sent to by name, kept open between messages
+    private final Map<String, MessageClient> exchangeClients = new HashMap<>();
+
     private final ConnectionFactory factory;
-    private final HashMap<String, Channel> channels = new HashMap<>();
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Core MessageQueue Reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean shuttingDown = false;
+    private final AtomicInteger reconnects = new AtomicInteger();
+    private final AtomicInteger failedReconnects = new AtomicInteger();
+    @Getter private volatile long lastDisconnect = 0;
 
     public MessageHandler() throws IOException, TimeoutException {
         factory = new ConnectionFactory();
@@ -37,28 +61,65 @@ public class MessageHandler {
         factory.setHost(section.getString("host"));
         factory.setUsername(section.getString("username"));
         factory.setPassword(section.getString("password"));
+        // Connections are recovered by reconnect() instead, which also restores everything in the topology
+        factory.setAutomaticRecoveryEnabled(false);
 
-        PUBLISHING_CONNECTION = factory.newConnection();
-        CONSUMING_CONNECTION = factory.newConnection();
+        PUBLISHING_CONNECTION = connect(ConnectionType.PUBLISHING);
+        CONSUMING_CONNECTION = connect(ConnectionType.CONSUMING);
+    }
 
-        PUBLISHING_CONNECTION.addShutdownListener(e -> {
-            Core.getInstance().getLogger().warning("Publishing connection has been closed - reinitializing!");
-            try {
-                PUBLISHING_CONNECTION = factory.newConnection();
-            } catch (IOException | TimeoutException ioException) {
-                Core.getInstance().getLogger().severe("Failed to reinitialize publishing connection!");
-                ioException.printStackTrace();
-            }
+    private Connection connect(ConnectionType type) throws IOException, TimeoutException {
+        Connection connection = factory.newConnection();
+        connection.addShutdownListener(e -> {
+            if (e.isInitiatedByApplication() || shuttingDown) return;
+            Core.getInstance().getLogger().warning(name(type) + " connection has been closed - reconnecting!");
+            lastDisconnect = System.currentTimeMillis();
+            if (type == ConnectionType.PUBLISHING) publisher.setConnected(false);
+            scheduleReconnect(type, 0);
         });
-        CONSUMING_CONNECTION.addShutdownListener(e -> {
-            Core.getInstance().getLogger().warning("Consuming connection has been closed - reinitializing!");
-            try {
-                CONSUMING_CONNECTION = factory.newConnection();
-            } catch (IOException | TimeoutException ioException) {
-                Core.getInstance().getLogger().severe("Failed to reinitialize consuming connection!");
-                ioException.printStackTrace();
+        return connection;
+    }
+
+    private void scheduleReconnect(ConnectionType type, int attempt) {
+        if (shuttingDown) return;
+        // 1, 2, 4, 8, 16 then 30 seconds between attempts
+        long delay = Math.min(30, 1L << Math.min(attempt, 5));
+        reconnector.schedule(() -> reconnect(type, attempt), delay, TimeUnit.SECONDS);
+    }
+
+    private void reconnect(ConnectionType type, int attempt) {
+        if (shuttingDown) return;
+        try {
+            Connection connection = connect(type);
+            int failed;
+            if (type == ConnectionType.PUBLISHING) {
+                PUBLISHING_CONNECTION = connection;
+                failed = topology.reopenClients();
+                publisher.setConnected(true);
+            } else {
+                CONSUMING_CONNECTION = connection;
+                failed = topology.reopenConsumers(connection);
             }
-        });
+            reconnects.incrementAndGet();
+            Core.getInstance().getLogger().info(name(type) + " connection has been reestablished" +
+                    (failed == 0 ? "" : ", " + failed + " clients or consumers couldn't be restored"));
+        } catch (Exception e) {
+            failedReconnects.incrementAndGet();
+            Core.getInstance().getLogger().severe("Failed to reconnect " + name(type).toLowerCase() + " connection: " + e.getMessage());
+            scheduleReconnect(type, attempt + 1);
+        }
+    }
+
+    private static String name(ConnectionType type) {
+        return type == ConnectionType.PUBLISHING ? "Publishing" : "Consuming";
+    }
+
+    public int getReconnects() {
+        return reconnects.get();
+    }
+
+    public int getFailedReconnects() {
+        return failedReconnects.get();
     }
 
     public void initialize() throws IOException, TimeoutException {
@@ -74,50 +135,42 @@ public class MessageHandler {
             Core.getInstance().getLogger().severe("There was an error initializing essential message publishing queues!");
         }
 
-        CancelCallback doNothing = consumerTag -> {
-        };
+        packetRegistry.subscribe(PacketID.Global.MENTION, MentionPacket.class, PacketRegistry.Execution.MAIN, packet -> {
+            CPlayer player = Core.getPlayerManager().getPlayer(packet.getUuid());
+            if (player != null)
+                player.playSound(player.getLocation(), Sound.ENTITY_EXPERIENCE_ORB_PICKUP, 50F, 1F);
+        });
 
-        registerConsumer("all_mc", "fanout", "", (consumerTag, delivery) -> {
-            try {
-                JsonObject object = parseDelivery(delivery);
-                Core.debugLog(object.toString());
-                int id = object.get("id").getAsInt();
-                try {
-                    new IncomingMessageEvent(id, object).call();
-                } catch (Exception e) {
-                    Core.logMessage("MessageHandler", "Error processing IncomingMessageEvent for incoming packet " + object.toString());
-                    e.printStackTrace();
-                }
-            } catch (Exception e) {
-                handleError(consumerTag, delivery, e);
-            }
-        }, doNothing);
+        registerPacketConsumer("all_mc", "fanout", "");
+
+        registerPacketConsumer("mc_direct", "direct", Core.getInstanceName());
+    }
 
-        registerConsumer("mc_direct", "direct", Core.getInstanceName(), (consumerTag, delivery) -> {
+    /**
+     * Pass a message received by a packet consumer to the inbound queue
+     *
+     * @param channel     the channel the message was received on
+     * @param consumerTag the consumer tag
+     * @param delivery    the message
+     */
+    private void handleDelivery(Channel channel, String consumerTag, Delivery delivery) {
+        try {
+            long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+            if (BINARY_CONTENT_TYPE.equals(delivery.getProperties().getContentType())) {
+                inboundQueue.receive(channel, deliveryTag, packetRegistry.decode(delivery.getBody()));
+                return;
+            }
+            JsonObject object = parseDelivery(delivery);
+            Core.debugLog(object.toString());
+            inboundQueue.receive(channel, deliveryTag, object);
+        } catch (Exception e) {
+            handleError(consumerTag, delivery, e);
             try {
-                JsonObject object = parseDelivery(delivery);
-                Core.debugLog(object.toString());
-                int id = object.get("id").getAsInt();
-                try {
-                    new IncomingMessageEvent(id, object).call();
-                } catch (Exception e) {
-                    Core.logMessage("MessageHandler", "Error processing IncomingMessageEvent for incoming packet " + object.toString());
-                    e.printStackTrace();
-                }
-                //noinspection SwitchStatementWithTooFewBranches
-                switch (id) {
-                    // Mention
-                    case 10: {
-                        MentionPacket packet = new MentionPacket(object);
-                        CPlayer player = Core.getPlayerManager().getPlayer(packet.getUuid());
-                        if (player != null)
-                            player.playSound(player.getLocation(), Sound.ENTITY_EXPERIENCE_ORB_PICKUP, 50F, 1F);
-                    }
-                }
-            } catch (Exception e) {
-                handleError(consumerTag, delivery, e);
+                channel.basicReject(delivery.getEnvelope().getDeliveryTag(), false);
+            } catch (IOException ioException) {
+                ioException.printStackTrace();
             }
-        }, doNothing);
+        }
     }
 
     public void handleError(String consumerTag, Delivery delivery, Exception e) {
@@ -149,27 +202,60 @@ public class MessageHandler {
      * @throws TimeoutException on TimeoutException
      */
     public String registerConsumer(String exchange, String exchangeType, String routingKey, DeliverCallback deliverCallback, CancelCallback cancelCallback) throws IOException, TimeoutException {
-        Channel channel = CONSUMING_CONNECTION.createChannel();
-        channel.exchangeDeclare(exchange, exchangeType);
-
-        String queueName = channel.queueDeclare().getQueue();
-        channel.queueBind(queueName, exchange, routingKey);
-
-        channel.basicConsume(queueName, true, deliverCallback, cancelCallback);
-
-        channels.put(queueName, channel);
+        Topology.RecordedConsumer consumer = new Topology.RecordedConsumer(exchange, exchangeType, routingKey, null,
+                channel -> deliverCallback, cancelCallback);
+        consumer.open(CONSUMING_CONNECTION);
+        topology.addConsumer(consumer);
+        return consumer.getName();
+    }
 
-        return queueName;
+    /**
+     * Register a MessageQueue consumer whose packets are passed to the packet registry and IncomingMessageEvent
+     * listeners on the main thread
+     *
+     * @param exchange     the exchange name
+     * @param exchangeType the exchange type (i.e. fanout)
+     * @param routingKey   the routing key to bind with
+     * @return the queue name created (used to cancel the consumer)
+     * @throws IOException on IOException
+     */
+    public String registerPacketConsumer(String exchange, String exchangeType, String routingKey) throws IOException {
+        // The prefetch limits how many messages can be waiting for the main thread
+        Topology.RecordedConsumer consumer = new Topology.RecordedConsumer(exchange, exchangeType, routingKey, inboundQueue.getPrefetch(),
+                channel -> (consumerTag, delivery) -> handleDelivery(channel, consumerTag, delivery), consumerTag -> {
+        });
+        consumer.open(CONSUMING_CONNECTION);
+        topology.addConsumer(consumer);
+        return consumer.getName();
     }
 
+    /**
+     * Stop a consumer
+     *
+     * @param queueName the queue name returned when the consumer was registered
+     * @throws IOException on IOException
+     */
     public void unregisterConsumer(String queueName) throws IOException {
-        Channel channel = channels.remove(queueName);
-        if (channel != null) {
-            channel.basicCancel(queueName);
+        Topology.RecordedConsumer consumer = topology.removeConsumer(queueName);
+        if (consumer != null) {
+            consumer.cancel();
         }
     }
 
     public void shutdown() {
+        publisher.shutdown(5000);
+        shuttingDown = true;
+        reconnector.shutdownNow();
+        synchronized (exchangeClients) {
+            exchangeClients.values().forEach(client -> {
+                try {
+                    client.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            exchangeClients.clear();
+        }
         if (ALL_PROXIES != null) {
             try {
                 ALL_PROXIES.close();
@@ -205,29 +291,60 @@ public class MessageHandler {
                 e.printStackTrace();
             }
         }
-        channels.forEach((queueName, channel) -> {
-            try {
-                Connection connection = channel.getConnection();
-                if (connection.isOpen()) connection.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
-        channels.clear();
+        try {
+            if (CONSUMING_CONNECTION.isOpen()) CONSUMING_CONNECTION.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
+    /**
+     * Queue a packet to be published with a client
+     *
+     * @param packet the packet
+     * @param client the client
+     * @throws IOException never, see {@link #sendMessage(MQPacket, MessageClient, String)}
+     */
     public void sendMessage(MQPacket packet, MessageClient client) throws IOException {
         sendMessage(packet, client, "");
     }
 
+    /**
+     * Queue a packet to be published with a client
+     * <p>
+     * Packets are published by the {@link Publisher}'s thread, so publishing errors can't be thrown here and are logged
+     * instead. Use {@link MessageClient#publish(MQPacket, String)} to find out whether a packet was published.
+     *
+     * @param packet     the packet
+     * @param client     the client
+     * @param routingKey the routing key
+     * @throws IOException never, it's only declared for callers written when packets were published here
+     */
     public void sendMessage(MQPacket packet, MessageClient client, String routingKey) throws IOException {
-        client.basicPublish(packet.toBytes(), routingKey);
+        client.publish(packet, routingKey);
     }
 
+    /**
+     * Queue a packet to be published to an exchange, keeping a client open for it between packets
+     *
+     * @param packet       the packet
+     * @param exchange     the exchange
+     * @param exchangeType the exchange type
+     * @param routingKey   the routing key
+     * @throws Exception if this is the first packet for the exchange and it couldn't be declared; publishing errors
+     *                   are logged, see {@link #sendMessage(MQPacket, MessageClient, String)}
+     */
     public void sendMessage(MQPacket packet, String exchange, String exchangeType, String routingKey) throws Exception {
-        MessageClient client = new MessageClient(ConnectionType.PUBLISHING, exchange, exchangeType);
-        client.basicPublish(packet.toBytes(), routingKey);
-        client.close();
+        MessageClient client;
+        synchronized (exchangeClients) {
+            client = exchangeClients.get(exchange);
+            // A closed channel is reopened by the publisher, or by the topology after reconnecting
+            if (client == null) {
+                client = new MessageClient(ConnectionType.PUBLISHING, exchange, exchangeType);
+                exchangeClients.put(exchange, client);
+            }
+        }
+        client.publish(packet, routingKey);
     }
 
     public void sendStaffMessage(String message) throws Exception {
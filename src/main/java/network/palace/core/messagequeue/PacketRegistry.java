@@ -0,0 +1,292 @@
+package network.palace.core.messagequeue;
+
+import com.google.gson.JsonObject;
+import lombok.Getter;
+import network.palace.core.Core;
+import network.palace.core.messagequeue.packets.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Decodes incoming message queue packets once and passes them to the handlers subscribed to their id
+ * <p>
+ * Handlers choose whether they run on the main thread or on the thread the message was received on. Packets without a
+ * decoder are only passed to {@link network.palace.core.events.IncomingMessageEvent} listeners.
+ */
+public class PacketRegistry {
+    private final Map<Integer, Function<JsonObject, ? extends MQPacket>> decoders = new ConcurrentHashMap<>();
+    private final Map<Integer, Function<PacketReader, ? extends MQPacket>> binaryDecoders = new ConcurrentHashMap<>();
+    private final Map<Integer, List<Subscription<?>>> handlers = new ConcurrentHashMap<>();
+    private final Map<Integer, Timings> timings = new ConcurrentHashMap<>();
+
+    public PacketRegistry() {
+        registerDecoder(PacketID.Global.BROADCAST, BroadcastPacket::new);
+        registerDecoder(PacketID.Global.MESSAGEBYRANK, MessageByRankPacket::new);
+        registerDecoder(PacketID.Global.MESSAGE, MessagePacket::new);
+        registerDecoder(PacketID.Global.COMPONENTMESSAGE, ComponentMessagePacket::new);
+        registerDecoder(PacketID.Global.MENTION, MentionPacket::new);
+        registerDecoder(PacketID.Global.SEND_PLAYER, SendPlayerPacket::new);
+        registerDecoder(PacketID.Global.MENTIONBYRANK, MentionByRankPacket::new);
+        registerDecoder(PacketID.Global.KICK_PLAYER, KickPlayerPacket::new);
+        registerDecoder(PacketID.Global.BROADCAST_COMPONENT, BroadcastComponentPacket::new);
+        registerDecoder(PacketID.Global.EMPTY_SERVER, EmptyServerPacket::new);
+        registerDecoder(PacketID.Global.RANK_CHANGE, RankChangePacket::new);
+        registerDecoder(PacketID.Global.LOG_STATISTIC, LogStatisticPacket::new);
+
+        registerBinaryDecoder(PacketID.Global.BROADCAST, BroadcastPacket::new);
+        registerBinaryDecoder(PacketID.Global.MESSAGE, MessagePacket::new);
+        registerBinaryDecoder(PacketID.Global.MENTION, MentionPacket::new);
+        registerBinaryDecoder(PacketID.Global.LOG_STATISTIC, LogStatisticPacket::new);
+    }
+
+    /**
+     * Register how a packet is decoded, replacing any decoder already registered for its id
+     *
+     * @param id      the packet id
+     * @param decoder creates the packet from its JSON
+     */
+    public void registerDecoder(int id, Function<JsonObject, ? extends MQPacket> decoder) {
+        decoders.put(id, decoder);
+    }
+
+    public void registerDecoder(PacketID.Global id, Function<JsonObject, ? extends MQPacket> decoder) {
+        registerDecoder(id.getId(), decoder);
+    }
+
+    /**
+     * Register how a packet in the binary format is decoded, replacing any binary decoder already registered for its id
+     *
+     * @param id      the packet id
+     * @param decoder creates the packet from a reader positioned after its id
+     * @see BinaryPacket
+     */
+    public void registerBinaryDecoder(int id, Function<PacketReader, ? extends MQPacket> decoder) {
+        binaryDecoders.put(id, decoder);
+    }
+
+    public void registerBinaryDecoder(PacketID.Global id, Function<PacketReader, ? extends MQPacket> decoder) {
+        registerBinaryDecoder(id.getId(), decoder);
+    }
+
+    /**
+     * Handle every packet received with an id
+     *
+     * @param id        the packet id
+     * @param type      the class of the packet, as created by the decoder for the id
+     * @param execution the thread the handler runs on
+     * @param handler   the handler
+     * @param <T>       the packet type
+     * @return the subscription, to unsubscribe with
+     */
+    public <T extends MQPacket> Subscription<T> subscribe(int id, Class<T> type, Execution execution, Consumer<T> handler) {
+        Subscription<T> subscription = new Subscription<>(this, id, type, execution, handler);
+        handlers.computeIfAbsent(id, i -> new CopyOnWriteArrayList<>()).add(subscription);
+        return subscription;
+    }
+
+    public <T extends MQPacket> Subscription<T> subscribe(PacketID.Global id, Class<T> type, Execution execution, Consumer<T> handler) {
+        return subscribe(id.getId(), type, execution, handler);
+    }
+
+    public void unsubscribe(Subscription<?> subscription) {
+        List<Subscription<?>> list = handlers.get(subscription.id);
+        if (list != null) list.remove(subscription);
+    }
+
+    /**
+     * Decode a packet
+     *
+     * @param object the packet's JSON
+     * @return the packet, or null if its id has no decoder
+     */
+    public MQPacket decode(JsonObject object) {
+        int id = object.get("id").getAsInt();
+        Function<JsonObject, ? extends MQPacket> decoder = decoders.get(id);
+        if (decoder == null) return null;
+        long start = System.nanoTime();
+        MQPacket packet = decoder.apply(object);
+        getTimings(id).decoded(System.nanoTime() - start);
+        return packet;
+    }
+
+    /**
+     * Decode a packet in the binary format
+     *
+     * @param bytes the packet
+     * @return the packet
+     * @throws IllegalArgumentException if the packet's id has no binary decoder or the packet is malformed
+     */
+    public MQPacket decode(byte[] bytes) {
+        long start = System.nanoTime();
+        PacketReader in = new PacketReader(bytes);
+        int id = in.readVarInt();
+        Function<PacketReader, ? extends MQPacket> decoder = binaryDecoders.get(id);
+        if (decoder == null) throw new IllegalArgumentException("No binary decoder registered for packet " + id);
+        MQPacket packet = decoder.apply(in);
+        getTimings(id).decoded(System.nanoTime() - start);
+        return packet;
+    }
+
+    /**
+     * Pass a decoded packet to its handlers, running async handlers on this thread and scheduling the rest on the main
+     * thread
+     *
+     * @param packet the packet
+     */
+    public void dispatch(MQPacket packet) {
+        if (dispatchAsync(packet)) Core.runTask(Core.getInstance(), () -> dispatchMain(packet));
+    }
+
+    /**
+     * Pass a decoded packet to its async handlers
+     *
+     * @param packet the packet
+     * @return true if the packet also has handlers that run on the main thread
+     */
+    boolean dispatchAsync(MQPacket packet) {
+        List<Subscription<?>> list = handlers.get(packet.getId());
+        if (list == null) return false;
+        boolean main = false;
+        for (Subscription<?> subscription : list) {
+            if (subscription.execution == Execution.ASYNC) {
+                subscription.handle(packet);
+            } else {
+                main = true;
+            }
+        }
+        return main;
+    }
+
+    /**
+     * Pass a decoded packet to its main thread handlers
+     *
+     * @param packet the packet
+     */
+    void dispatchMain(MQPacket packet) {
+        List<Subscription<?>> list = handlers.get(packet.getId());
+        if (list == null) return;
+        for (Subscription<?> subscription : list) {
+            if (subscription.execution == Execution.MAIN) subscription.handle(packet);
+        }
+    }
+
+    public boolean hasHandlers(int id) {
+        List<Subscription<?>> list = handlers.get(id);
+        return list != null && !list.isEmpty();
+    }
+
+    /**
+     * Get the timings of every packet id that has been decoded or handled
+     *
+     * @return the timings by packet id
+     */
+    public Map<Integer, Timings> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    private Timings getTimings(int id) {
+        return timings.computeIfAbsent(id, i -> new Timings());
+    }
+
+    public enum Execution {
+        /**
+         * Run on the server thread, for handlers that use the Bukkit API
+         */
+        MAIN,
+        /**
+         * Run on the thread the message was received on, which must not block
+         */
+        ASYNC
+    }
+
+    public static final class Subscription<T extends MQPacket> {
+        private final PacketRegistry registry;
+        @Getter private final int id;
+        private final Class<T> type;
+        @Getter private final Execution execution;
+        private final Consumer<T> handler;
+
+        private Subscription(PacketRegistry registry, int id, Class<T> type, Execution execution, Consumer<T> handler) {
+            this.registry = registry;
+            this.id = id;
+            this.type = type;
+            this.execution = execution;
+            this.handler = handler;
+        }
+
+        public void unsubscribe() {
+            registry.unsubscribe(this);
+        }
+
+        private void handle(MQPacket packet) {
+            if (!type.isInstance(packet)) {
+                Core.logMessage("PacketRegistry", "Handler for packet " + id + " expects " + type.getSimpleName() +
+                        " but received " + packet.getClass().getSimpleName());
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                handler.accept(type.cast(packet));
+            } catch (Exception e) {
+                registry.getTimings(id).failed();
+                Core.logMessage("PacketRegistry", "Error handling packet " + id + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+            registry.getTimings(id).handled(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * How many packets with an id have been decoded and handled, and how long it took in total
+     */
+    public static final class Timings {
+        private final AtomicLong decoded = new AtomicLong();
+        private final AtomicLong decodeTime = new AtomicLong();
+        private final AtomicLong handled = new AtomicLong();
+        private final AtomicLong handleTime = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        private void decoded(long nanos) {
+            decoded.incrementAndGet();
+            decodeTime.addAndGet(nanos);
+        }
+
+        private void handled(long nanos) {
+            handled.incrementAndGet();
+            handleTime.addAndGet(nanos);
+        }
+
+        private void failed() {
+            errors.incrementAndGet();
+        }
+
+        public long getDecoded() {
+            return decoded.get();
+        }
+
+        public long getHandled() {
+            return handled.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getAverageDecodeTime() {
+            long count = decoded.get();
+            return count == 0 ? 0 : decodeTime.get() / count;
+        }
+
+        public long getAverageHandleTime() {
+            long count = handled.get();
+            return count == 0 ? 0 : handleTime.get() / count;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package network.palace.core.messagequeue;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ShutdownSignalException;
+import lombok.Getter;
+import lombok.Setter;
+import network.palace.core.Core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes every outgoing message from one thread, since channels can't be used by several threads at once
+ * <p>
+ * Messages are queued by any thread and published in batches: once a message is queued, the publisher waits for the
+ * batch window for more to arrive, then sends them all back to back. With publisher confirms enabled, each message's
+ * future completes when the broker confirms it, otherwise once it's been written.
+ * <p>
+ * While the publishing connection is down, messages are kept in a bounded buffer and published once it's reopened.
+ * When the buffer is full the oldest messages are dropped.
+ */
+public final class Publisher {
+    private final BlockingQueue<Outgoing> queue;
+    private final Thread thread;
+    private final long window;
+    private final int maxBatch;
+    @Getter private final boolean confirms;
+    private volatile boolean stopping = false;
+    @Getter @Setter private volatile boolean connected = true;
+    // Only used by the publisher thread
+    private final Deque<Outgoing> buffer = new ArrayDeque<>();
+    private final int bufferCapacity;
+    private volatile int bufferSize = 0;
+    private volatile long lastDropLog = 0;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong bufferDropped = new AtomicLong();
+
+    Publisher() {
+        queue = new LinkedBlockingQueue<>(Math.max(1, Core.getCoreConfig().getInt("rabbitmq.publish-capacity", 10000)));
+        window = TimeUnit.MILLISECONDS.toNanos(Core.getCoreConfig().getLong("rabbitmq.batch-window", 1));
+        maxBatch = Math.max(1, Core.getCoreConfig().getInt("rabbitmq.max-batch", 100));
+        confirms = Core.getCoreConfig().getBoolean("rabbitmq.confirms", false);
+        bufferCapacity = Math.max(0, Core.getCoreConfig().getInt("rabbitmq.outbound-buffer", 1000));
+        thread = new Thread(this::run, "Core MessageQueue Publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a message to be published
+     *
+     * @param client     the client to publish with
+     * @param bytes      the message
+     * @param routingKey the routing key
+     * @param props      the message properties
+     * @return a future completed when the message is published, or confirmed if confirms are enabled
+     */
+    CompletableFuture<Void> publish(MessageClient client, byte[] bytes, String routingKey, AMQP.BasicProperties props) {
+        Outgoing outgoing = new Outgoing(client, bytes, routingKey, props);
+        if (stopping || !queue.offer(outgoing)) {
+            dropped.incrementAndGet();
+            String reason = "Publish queue is " + (stopping ? "stopped" : "full");
+            logDropped(reason);
+            outgoing.future.completeExceptionally(new IllegalStateException(reason));
+        }
+        return outgoing.future;
+    }
+
+    private void run() {
+        List<Outgoing> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            if (connected && !buffer.isEmpty()) flushBuffer();
+            try {
+                Outgoing first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (stopping) {
+                        dropBuffer();
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + window;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Outgoing next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (batch.isEmpty()) {
+                    dropBuffer();
+                    return;
+                }
+            }
+            for (Outgoing outgoing : batch) {
+                send(outgoing);
+            }
+            batches.incrementAndGet();
+            batch.clear();
+        }
+    }
+
+    private void send(Outgoing outgoing) {
+        // Keeps messages in order while older ones are still buffered
+        if (!connected || !buffer.isEmpty() || !trySend(outgoing)) buffer(outgoing);
+    }
+
+    /**
+     * Publish a message
+     *
+     * @return false if the connection is down and the message should be buffered
+     */
+    private boolean trySend(Outgoing outgoing) {
+        MessageClient client = outgoing.client;
+        try {
+            if (!client.getChannel().isOpen()) {
+                if (!Core.getMessageHandler().getConnection(client.getType()).isOpen()) return false;
+                // The channel was closed by a failed declaration, or couldn't be reopened after reconnecting
+                client.reopen();
+            }
+            client.send(outgoing.bytes, outgoing.routingKey, outgoing.props, confirms ? outgoing.future : null);
+            published.incrementAndGet();
+            if (!confirms) outgoing.future.complete(null);
+        } catch (ShutdownSignalException e) {
+            return false;
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            Core.logMessage("MessageHandler", "Error publishing to " + client.getName() + ": " + e.getMessage());
+            outgoing.future.completeExceptionally(e);
+        }
+        return true;
+    }
+
+    private void buffer(Outgoing outgoing) {
+        if (buffer.size() >= bufferCapacity) {
+            Outgoing oldest = buffer.isEmpty() ? outgoing : buffer.poll();
+            bufferDropped.incrementAndGet();
+            logDropped("Outbound buffer is full");
+            oldest.future.completeExceptionally(new IllegalStateException("Dropped from the outbound buffer while disconnected"));
+            if (oldest == outgoing) return;
+        }
+        buffer.add(outgoing);
+        buffered.incrementAndGet();
+        bufferSize = buffer.size();
+    }
+
+    private void flushBuffer() {
+        while (connected && !buffer.isEmpty()) {
+            if (!trySend(buffer.peek())) break;
+            buffer.poll();
+        }
+        bufferSize = buffer.size();
+    }
+
+    private void dropBuffer() {
+        if (!buffer.isEmpty()) {
+            Core.logMessage("MessageHandler", "Dropping " + buffer.size() + " messages buffered while disconnected");
+        }
+        for (Outgoing outgoing : buffer) {
+            bufferDropped.incrementAndGet();
+            outgoing.future.completeExceptionally(new IllegalStateException("Publisher stopped while disconnected"));
+        }
+        buffer.clear();
+        bufferSize = 0;
+    }
+
+    /**
+     * Log that messages are being dropped, at most once a second so a backlog doesn't flood the console
+     */
+    private void logDropped(String reason) {
+        long now = System.currentTimeMillis();
+        if (now - lastDropLog < 1000) return;
+        lastDropLog = now;
+        Core.logMessage("MessageHandler", reason + ", dropping messages (" + (dropped.get() + bufferDropped.get()) + " dropped so far)");
+    }
+
+    /**
+     * Publish everything still queued, then stop the publisher thread
+     *
+     * @param timeout the longest time to wait in milliseconds
+     */
+    void shutdown(long timeout) {
+        stopping = true;
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) thread.interrupt();
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getBuffered() {
+        return buffered.get();
+    }
+
+    public long getBufferDropped() {
+        return bufferDropped.get();
+    }
+
+    private static class Outgoing {
+        private final MessageClient client;
+        private final byte[] bytes;
+        private final String routingKey;
+        private final AMQP.BasicProperties props;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Outgoing(MessageClient client, byte[] bytes, String routingKey, AMQP.BasicProperties props) {
+            this.client = client;
+            this.bytes = bytes;
+            this.routingKey = routingKey;
+            this.props = props;
+        }
+    }
+}
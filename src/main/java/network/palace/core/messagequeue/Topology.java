@@ -0,0 +1,141 @@
+package network.palace.core.messagequeue;
+
+import com.rabbitmq.client.CancelCallback;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+import lombok.Getter;
+import network.palace.core.Core;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Remembers every client and consumer declared on the message queue connections, so they can be declared again after
+ * a connection is lost and reopened
+ */
+public final class Topology {
+    private final Set<MessageClient> clients = ConcurrentHashMap.newKeySet();
+    // Consumers by the queue name returned when they were registered, which stays the same after reconnecting
+    private final Map<String, RecordedConsumer> consumers = new ConcurrentHashMap<>();
+
+    void addClient(MessageClient client) {
+        clients.add(client);
+    }
+
+    void removeClient(MessageClient client) {
+        clients.remove(client);
+    }
+
+    void addConsumer(RecordedConsumer consumer) {
+        consumers.put(consumer.getName(), consumer);
+    }
+
+    RecordedConsumer removeConsumer(String name) {
+        return consumers.remove(name);
+    }
+
+    Iterable<RecordedConsumer> getConsumers() {
+        return consumers.values();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public int getConsumerCount() {
+        return consumers.size();
+    }
+
+    /**
+     * Open a new channel for every client on the publishing connection and declare its exchange or queue again
+     *
+     * @return the number of clients that couldn't be reopened
+     */
+    int reopenClients() {
+        int failed = 0;
+        for (MessageClient client : clients) {
+            try {
+                client.reopen();
+            } catch (Exception e) {
+                failed++;
+                Core.logMessage("MessageHandler", "Error reopening client " + client.getName() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Declare every consumer's exchange, queue and binding on a new connection and start consuming again
+     *
+     * @param connection the consuming connection
+     * @return the number of consumers that couldn't be restored
+     */
+    int reopenConsumers(Connection connection) {
+        int failed = 0;
+        for (RecordedConsumer consumer : consumers.values()) {
+            try {
+                consumer.open(connection);
+            } catch (Exception e) {
+                failed++;
+                Core.logMessage("MessageHandler", "Error restoring consumer on " + consumer.exchange + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * A consumer bound to an exchange through a queue named by the server
+     */
+    static final class RecordedConsumer {
+        private final String exchange;
+        private final String exchangeType;
+        private final String routingKey;
+        // Null to acknowledge messages automatically
+        private final Integer prefetch;
+        private final Function<Channel, DeliverCallback> deliverCallback;
+        private final CancelCallback cancelCallback;
+        @Getter private String name;
+        @Getter private volatile Channel channel;
+        private volatile String consumerTag;
+
+        RecordedConsumer(String exchange, String exchangeType, String routingKey, Integer prefetch,
+                         Function<Channel, DeliverCallback> deliverCallback, CancelCallback cancelCallback) {
+            this.exchange = exchange;
+            this.exchangeType = exchangeType;
+            this.routingKey = routingKey;
+            this.prefetch = prefetch;
+            this.deliverCallback = deliverCallback;
+            this.cancelCallback = cancelCallback;
+        }
+
+        /**
+         * Declare the exchange and a new queue bound to it, and start consuming from the queue
+         *
+         * @param connection the connection to open a channel on
+         * @throws IOException on IOException
+         */
+        void open(Connection connection) throws IOException {
+            Channel channel = connection.createChannel();
+            if (prefetch != null) channel.basicQos(prefetch);
+            channel.exchangeDeclare(exchange, exchangeType);
+
+            String queueName = channel.queueDeclare().getQueue();
+            channel.queueBind(queueName, exchange, routingKey);
+
+            consumerTag = channel.basicConsume(queueName, prefetch == null, deliverCallback.apply(channel), cancelCallback);
+            this.channel = channel;
+            if (name == null) name = queueName;
+        }
+
+        void cancel() throws IOException {
+            Channel channel = this.channel;
+            if (channel != null && channel.isOpen()) channel.basicCancel(consumerTag);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package network.palace.core.messagequeue.packets;
+
+/**
+ * A packet that can also be sent in the binary format, for exchanges whose consumers all understand it
+ * <p>
+ * The binary format is the packet id as a VarInt followed by whatever {@link #write(PacketWriter)} writes. Packets are
+ * read back by a constructor taking a {@link PacketReader}, registered with the packet registry.
+ */
+public interface BinaryPacket {
+
+    /**
+     * Write the packet's fields, in the order its {@link PacketReader} constructor reads them
+     *
+     * @param out the writer
+     */
+    void write(PacketWriter out);
+}
@@ -3,7 +3,7 @@ package network.palace.core.messagequeue.packets;
 import com.google.gson.JsonObject;
 import lombok.Getter;
 
-public class BroadcastPacket extends MQPacket {
+public class BroadcastPacket extends MQPacket implements BinaryPacket {
     @Getter private final String sender, message;
 
     public BroadcastPacket(JsonObject object) {
@@ -12,6 +12,12 @@ public class BroadcastPacket extends MQPacket {
         this.message = object.get("message").getAsString();
     }
 
+    public BroadcastPacket(PacketReader in) {
+        super(PacketID.Global.BROADCAST.getId(), null);
+        this.sender = in.readString();
+        this.message = in.readString();
+    }
+
     public BroadcastPacket(String sender, String message) {
         super(PacketID.Global.BROADCAST.getId(), null);
         this.sender = sender;
@@ -25,4 +31,9 @@ public class BroadcastPacket extends MQPacket {
         object.addProperty("message", message);
         return object;
     }
+
+    @Override
+    public void write(PacketWriter out) {
+        out.writeString(sender).writeString(message);
+    }
 }
@@ -10,7 +10,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 @Getter
-public class LogStatisticPacket extends MQPacket {
+public class LogStatisticPacket extends MQPacket implements BinaryPacket {
+    // Numbers are sent as a long or a double so the binary format is as precise as JSON
+    private static final int STRING = 0, BOOLEAN = 1, LONG = 2, DOUBLE = 3;
+
     private final String measurement;
     private final HashMap<String, Object> tags;
     private final HashMap<String, Object> fields;
@@ -39,6 +42,36 @@ public class LogStatisticPacket extends MQPacket {
         }
     }
 
+    public LogStatisticPacket(PacketReader in) {
+        super(PacketID.Global.LOG_STATISTIC.getId(), null);
+        this.measurement = in.readString();
+        this.tags = new HashMap<>();
+        int tagCount = in.readVarInt();
+        for (int i = 0; i < tagCount; i++) {
+            this.tags.put(in.readString(), in.readString());
+        }
+        this.fields = new HashMap<>();
+        int fieldCount = in.readVarInt();
+        for (int i = 0; i < fieldCount; i++) {
+            String key = in.readString();
+            // Numbers are read back as floats, the same as from JSON
+            switch (in.readByte()) {
+                case BOOLEAN:
+                    this.fields.put(key, in.readBoolean());
+                    break;
+                case LONG:
+                    this.fields.put(key, (float) in.readLong());
+                    break;
+                case DOUBLE:
+                    this.fields.put(key, (float) in.readDouble());
+                    break;
+                default:
+                    this.fields.put(key, in.readString());
+                    break;
+            }
+        }
+    }
+
     public LogStatisticPacket(String measurement, HashMap<String, Object> tags, HashMap<String, Object> fields) {
         super(PacketID.Global.LOG_STATISTIC.getId(), null);
         this.measurement = measurement;
@@ -86,4 +119,30 @@ public class LogStatisticPacket extends MQPacket {
         }
         return object;
     }
+
+    @Override
+    public void write(PacketWriter out) {
+        out.writeString(measurement);
+        out.writeVarInt(tags.size());
+        for (Map.Entry<String, Object> entry : tags.entrySet()) {
+            out.writeString(entry.getKey()).writeString(String.valueOf(entry.getValue()));
+        }
+        int fieldCount = 0;
+        for (Object value : fields.values()) {
+            if (value instanceof Number || value instanceof Boolean || value instanceof String) fieldCount++;
+        }
+        out.writeVarInt(fieldCount);
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                out.writeString(entry.getKey()).writeByte(LONG).writeLong(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                out.writeString(entry.getKey()).writeByte(DOUBLE).writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                out.writeString(entry.getKey()).writeByte(BOOLEAN).writeBoolean((Boolean) value);
+            } else if (value instanceof String) {
+                out.writeString(entry.getKey()).writeByte(STRING).writeString((String) value);
+            }
+        }
+    }
 }
@@ -30,6 +30,21 @@ public abstract class MQPacket {
         return object;
     }
 
+    /**
+     * Serialize this packet in the binary format
+     *
+     * @return the packet id followed by the packet's fields
+     * @throws UnsupportedOperationException if the packet doesn't implement {@link BinaryPacket}
+     */
+    public byte[] toBinary() {
+        if (!(this instanceof BinaryPacket))
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " has no binary format");
+        PacketWriter out = new PacketWriter();
+        out.writeVarInt(id);
+        ((BinaryPacket) this).write(out);
+        return out.toByteArray();
+    }
+
     public byte[] toBytes() {
         JsonObject obj = getJSON();
         if (obj != null) return obj.toString().getBytes(StandardCharsets.UTF_8);
@@ -5,7 +5,7 @@ import lombok.Getter;
 
 import java.util.UUID;
 
-public class MentionPacket extends MQPacket {
+public class MentionPacket extends MQPacket implements BinaryPacket {
     @Getter private UUID uuid;
 
     public MentionPacket(JsonObject object) {
@@ -13,6 +13,11 @@ public class MentionPacket extends MQPacket {
         this.uuid = UUID.fromString(object.get("uuid").getAsString());
     }
 
+    public MentionPacket(PacketReader in) {
+        super(PacketID.Global.MENTION.getId(), null);
+        this.uuid = in.readUUID();
+    }
+
     public MentionPacket(UUID uuid) {
         super(PacketID.Global.MENTION.getId(), null);
         this.uuid = uuid;
@@ -24,4 +29,9 @@ public class MentionPacket extends MQPacket {
         object.addProperty("uuid", uuid.toString());
         return object;
     }
+
+    @Override
+    public void write(PacketWriter out) {
+        out.writeUUID(uuid);
+    }
 }
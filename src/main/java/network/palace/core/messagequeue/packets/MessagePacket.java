@@ -10,7 +10,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
-public class MessagePacket extends MQPacket {
+public class MessagePacket extends MQPacket implements BinaryPacket {
     @Getter private final String message;
     @Getter private final List<UUID> players;
 
@@ -24,6 +24,16 @@ public class MessagePacket extends MQPacket {
         }
     }
 
+    public MessagePacket(PacketReader in) {
+        super(PacketID.Global.MESSAGE.getId(), null);
+        this.message = in.readString();
+        int count = in.readVarInt();
+        this.players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            players.add(in.readUUID());
+        }
+    }
+
     public MessagePacket(String message, List<UUID> players) {
         super(PacketID.Global.MESSAGE.getId(), null);
         this.message = message;
@@ -47,4 +57,10 @@ public class MessagePacket extends MQPacket {
 
         return object;
     }
+
+    @Override
+    public void write(PacketWriter out) {
+        out.writeString(message).writeVarInt(players.size());
+        players.forEach(out::writeUUID);
+    }
 }
@@ -0,0 +1,72 @@
+package network.palace.core.messagequeue.packets;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Reads the fields of a binary packet from a byte array, in the order they were written by a {@link PacketWriter}
+ */
+public class PacketReader {
+    private final byte[] bytes;
+    private int position;
+
+    public PacketReader(byte[] bytes) {
+        this.bytes = bytes;
+        this.position = 0;
+    }
+
+    public int readByte() {
+        require(1);
+        return bytes[position++];
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("VarInt is too long");
+    }
+
+    public int readInt() {
+        require(4);
+        return ((bytes[position++] & 0xFF) << 24) | ((bytes[position++] & 0xFF) << 16)
+                | ((bytes[position++] & 0xFF) << 8) | (bytes[position++] & 0xFF);
+    }
+
+    public long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public UUID readUUID() {
+        return new UUID(readLong(), readLong());
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        if (length < 0) throw new IllegalArgumentException("Negative string length " + length);
+        require(length);
+        String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private void require(int count) {
+        if (position + count > bytes.length)
+            throw new IllegalArgumentException("Packet ended after " + bytes.length + " bytes, expected " + (position + count));
+    }
+}
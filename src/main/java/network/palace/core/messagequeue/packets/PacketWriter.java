@@ -0,0 +1,97 @@
+package network.palace.core.messagequeue.packets;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Writes the fields of a binary packet into a byte array
+ */
+public class PacketWriter {
+    private byte[] buffer;
+    private int size = 0;
+
+    public PacketWriter() {
+        this(64);
+    }
+
+    public PacketWriter(int capacity) {
+        buffer = new byte[Math.max(16, capacity)];
+    }
+
+    public PacketWriter writeByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    public PacketWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Write an int in 1 to 5 bytes, fewer for smaller non-negative values
+     *
+     * @param value the value
+     * @return this writer
+     */
+    public PacketWriter writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    public PacketWriter writeInt(int value) {
+        ensure(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    public PacketWriter writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        return writeInt((int) value);
+    }
+
+    public PacketWriter writeFloat(float value) {
+        return writeInt(Float.floatToIntBits(value));
+    }
+
+    public PacketWriter writeDouble(double value) {
+        return writeLong(Double.doubleToLongBits(value));
+    }
+
+    public PacketWriter writeUUID(UUID uuid) {
+        writeLong(uuid.getMostSignificantBits());
+        return writeLong(uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Write a string as its UTF-8 length followed by its UTF-8 bytes
+     *
+     * @param value the string
+     * @return this writer
+     */
+    public PacketWriter writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensure(int bytes) {
+        if (size + bytes > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+    }
+}
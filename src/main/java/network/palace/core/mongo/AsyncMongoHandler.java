@@ -0,0 +1,613 @@
+package network.palace.core.mongo;
+
+import network.palace.core.Core;
+import network.palace.core.economy.currency.CurrencyType;
+import network.palace.core.economy.currency.TransactionRecord;
+import network.palace.core.economy.honor.HonorMapping;
+import network.palace.core.economy.honor.TopHonorReport;
+import network.palace.core.npc.mob.MobPlayerTexture;
+import network.palace.core.player.CPlayer;
+import network.palace.core.player.Rank;
+import network.palace.core.player.RankTag;
+import network.palace.core.resource.ResourcePack;
+import network.palace.core.tracking.GameType;
+import network.palace.core.tracking.StatisticType;
+import org.bson.Document;
+import org.bukkit.Bukkit;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Non-blocking mirror of {@link MongoHandler}. Every call is executed on a bounded worker pool and
+ * returns a {@link CompletableFuture}, so database round-trips never hold up the server thread.
+ * <p>
+ * Use {@link #sync(CompletableFuture, Consumer)} to get back onto the main thread once a result is available.
+ */
+@SuppressWarnings("rawtypes")
+public class AsyncMongoHandler {
+    private final MongoHandler handler;
+    private final ThreadPoolExecutor executor;
+    private final Executor mainThreadExecutor = task -> {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Core.runTask(task);
+        }
+    };
+
+    /**
+     * Instantiates a new async mongo handler
+     *
+     * @param handler   the blocking handler every call is delegated to
+     * @param threads   the amount of worker threads
+     * @param queueSize the amount of calls that can be waiting for a worker before new calls are rejected
+     */
+    public AsyncMongoHandler(MongoHandler handler, int threads, int queueSize) {
+        this.handler = handler;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, "Core-Mongo-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run a read against the database off the main thread
+     *
+     * @param query the query to run
+     * @param <T>   the result type
+     * @return a future completed with the query's result
+     * @implNote If the worker queue is full, the returned future completes exceptionally with a {@link RejectedExecutionException}
+     */
+    public <T> CompletableFuture<T> supply(Function<MongoHandler, T> query) {
+        try {
+            return CompletableFuture.supplyAsync(() -> query.apply(handler), executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Run a write against the database off the main thread
+     *
+     * @param update the update to run
+     * @return a future completed once the update has finished
+     * @implNote If the worker queue is full, the returned future completes exceptionally with a {@link RejectedExecutionException}
+     */
+    public CompletableFuture<Void> run(Consumer<MongoHandler> update) {
+        return supply(h -> {
+            update.accept(h);
+            return null;
+        });
+    }
+
+    /**
+     * Handle the result of a future on the main server thread
+     *
+     * @param future   the future
+     * @param callback what to do with the result, called on the main thread
+     * @param <T>      the result type
+     * @return a future completed once the callback has run
+     * @implNote Errors are logged and not passed to the callback, use {@link #sync(CompletableFuture, BiConsumer)} to handle them
+     */
+    public <T> CompletableFuture<Void> sync(CompletableFuture<T> future, Consumer<T> callback) {
+        return sync(future, (result, error) -> {
+            if (error != null) {
+                Core.logMessage("MongoHandler", "Error running async database call: " + error.getMessage());
+                error.printStackTrace();
+                return;
+            }
+            callback.accept(result);
+        });
+    }
+
+    /**
+     * Handle the result or error of a future on the main server thread
+     *
+     * @param future   the future
+     * @param callback what to do with the result or error, called on the main thread
+     * @param <T>      the result type
+     * @return a future completed once the callback has run
+     */
+    public <T> CompletableFuture<Void> sync(CompletableFuture<T> future, BiConsumer<T, Throwable> callback) {
+        return future.handleAsync((result, error) -> {
+            callback.accept(result, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            return null;
+        }, mainThreadExecutor);
+    }
+
+    /**
+     * Get an executor that runs tasks on the main server thread
+     *
+     * @return the main thread executor
+     */
+    public Executor mainThread() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Get the amount of calls waiting for a worker
+     *
+     * @return the queue size
+     */
+    public int getQueuedCalls() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stop accepting new calls and wait for queued calls to finish
+     *
+     * @param timeoutMillis the maximum amount of time to wait
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                Core.logMessage("MongoHandler", "Timed out waiting for " + executor.getQueue().size() + " queued database calls");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* Player Methods */
+
+    public CompletableFuture<Void> createPlayer(CPlayer player) {
+        return run(h -> h.createPlayer(player));
+    }
+
+    public CompletableFuture<Document> getPlayer(UUID uuid) {
+        return supply(h -> h.getPlayer(uuid));
+    }
+
+    public CompletableFuture<Document> getPlayer(UUID uuid, Document limit) {
+        return supply(h -> h.getPlayer(uuid, limit));
+    }
+
+    public CompletableFuture<Boolean> isPlayerOnline(UUID uuid) {
+        return supply(h -> h.isPlayerOnline(uuid));
+    }
+
+    public CompletableFuture<Boolean> playerExists(String username) {
+        return supply(h -> h.playerExists(username));
+    }
+
+    public CompletableFuture<Rank> getRank(UUID uuid) {
+        return supply(h -> h.getRank(uuid));
+    }
+
+    public CompletableFuture<Rank> getRank(String username) {
+        return supply(h -> h.getRank(username));
+    }
+
+    public CompletableFuture<List<RankTag>> getRankTags(UUID uuid) {
+        return supply(h -> h.getRankTags(uuid));
+    }
+
+    public CompletableFuture<Void> addRankTag(UUID uuid, RankTag tag) {
+        return run(h -> h.addRankTag(uuid, tag));
+    }
+
+    public CompletableFuture<Void> removeRankTag(UUID uuid, RankTag tag) {
+        return run(h -> h.removeRankTag(uuid, tag));
+    }
+
+    public CompletableFuture<String> uuidToUsername(UUID uuid) {
+        return supply(h -> h.uuidToUsername(uuid));
+    }
+
+    public CompletableFuture<UUID> usernameToUUID(String username) {
+        return supply(h -> h.usernameToUUID(username));
+    }
+
+    public CompletableFuture<Void> cacheSkin(UUID uuid, String value, String signature) {
+        return run(h -> h.cacheSkin(uuid, value, signature));
+    }
+
+    public CompletableFuture<MobPlayerTexture> getPlayerTextureHash(UUID uuid) {
+        return supply(h -> h.getPlayerTextureHash(uuid));
+    }
+
+    public CompletableFuture<String> getLanguage(UUID uuid) {
+        return supply(h -> h.getLanguage(uuid));
+    }
+
+    public CompletableFuture<Optional<String>> getUserDiscordId(UUID uuid) {
+        return supply(h -> h.getUserDiscordId(uuid));
+    }
+
+    public CompletableFuture<Void> banPlayer(UUID uuid, String reason, long expires, boolean permanent, String source) {
+        return run(h -> h.banPlayer(uuid, reason, expires, permanent, source));
+    }
+
+    /* Warp Methods */
+
+    public CompletableFuture<List<Document>> getWarps() {
+        return supply(h -> h.getWarps().into(new ArrayList<>()));
+    }
+
+    public CompletableFuture<Void> deleteWarp(String name) {
+        return run(h -> h.deleteWarp(name));
+    }
+
+    public CompletableFuture<Void> createWarp(String name, String server, double x, double y, double z, float yaw, float pitch, String world, Rank rank) {
+        return run(h -> h.createWarp(name, server, x, y, z, yaw, pitch, world, rank));
+    }
+
+    /* Achievement Methods */
+
+    public CompletableFuture<Void> addAchievement(UUID uuid, int achievementID) {
+        return run(h -> h.addAchievement(uuid, achievementID));
+    }
+
+    public CompletableFuture<List<Integer>> getAchievements(UUID uuid) {
+        return supply(h -> h.getAchievements(uuid));
+    }
+
+    /* Cosmetics */
+
+    public CompletableFuture<Void> earnCosmetic(UUID uuid, int id) {
+        return run(h -> h.earnCosmetic(uuid, id));
+    }
+
+    public CompletableFuture<Boolean> hasCosmetic(UUID uuid, int id) {
+        return supply(h -> h.hasCosmetic(uuid, id));
+    }
+
+    public CompletableFuture<List<Integer>> getCosmetics(UUID uuid) {
+        return supply(h -> h.getCosmetics(uuid));
+    }
+
+    public CompletableFuture<Integer> getActiveHat(UUID uuid) {
+        return supply(h -> h.getActiveHat(uuid));
+    }
+
+    public CompletableFuture<Integer> getActiveParticle(UUID uuid) {
+        return supply(h -> h.getActiveParticle(uuid));
+    }
+
+    public CompletableFuture<Void> setActiveHat(UUID uuid, int id) {
+        return run(h -> h.setActiveHat(uuid, id));
+    }
+
+    public CompletableFuture<Void> setActiveParticle(UUID uuid, int id) {
+        return run(h -> h.setActiveParticle(uuid, id));
+    }
+
+    public CompletableFuture<Void> setActiveToy(UUID uuid, int id) {
+        return run(h -> h.setActiveToy(uuid, id));
+    }
+
+    /* Economy Methods */
+
+    public CompletableFuture<Integer> getCurrency(UUID uuid, CurrencyType type) {
+        return supply(h -> h.getCurrency(uuid, type));
+    }
+
+    public CompletableFuture<Void> changeAmount(UUID uuid, int amount, String source, CurrencyType type, boolean set) {
+        return run(h -> h.changeAmount(uuid, amount, source, type, set));
+    }
+
+    public CompletableFuture<List<TransactionRecord>> getTransactionHistory(TransactionQuery query, int page, int pageSize) {
+        return supply(h -> h.getTransactionLedger().getHistory(query, page, pageSize));
+    }
+
+    public CompletableFuture<Long> countTransactions(TransactionQuery query) {
+        return supply(h -> h.getTransactionLedger().count(query));
+    }
+
+    /* Game Methods */
+
+    public CompletableFuture<Integer> getGameStat(GameType game, StatisticType type, UUID uuid) {
+        return supply(h -> h.getGameStat(game, type, uuid));
+    }
+
+    public CompletableFuture<Void> addGameStat(GameType game, StatisticType statistic, int amount, UUID uuid) {
+        return run(h -> h.addGameStat(game, statistic, amount, uuid));
+    }
+
+    /* Honor Methods */
+
+    public CompletableFuture<List<HonorMapping>> getHonorMappings() {
+        return supply(MongoHandler::getHonorMappings);
+    }
+
+    public CompletableFuture<Void> addHonor(UUID uuid, int amount, String source) {
+        return run(h -> h.addHonor(uuid, amount, source));
+    }
+
+    public CompletableFuture<Void> setHonor(UUID uuid, int amount, String source) {
+        return run(h -> h.setHonor(uuid, amount, source));
+    }
+
+    public CompletableFuture<Integer> getHonor(UUID uuid) {
+        return supply(h -> h.getHonor(uuid));
+    }
+
+    public CompletableFuture<List<TopHonorReport>> getTopHonor(int limit) {
+        return supply(h -> h.getTopHonor(limit));
+    }
+
+    /* Resource Pack Methods */
+
+    public CompletableFuture<List<ResourcePack>> getResourcePacks() {
+        return supply(MongoHandler::getResourcePacks);
+    }
+
+    /* Permission Methods */
+
+    public CompletableFuture<List<String>> getMembers(Rank rank) {
+        return supply(h -> h.getMembers(rank));
+    }
+
+    public CompletableFuture<List<String>> getMembers(RankTag tag) {
+        return supply(h -> h.getMembers(tag));
+    }
+
+    public CompletableFuture<Void> setRank(UUID uuid, Rank rank) {
+        return run(h -> h.setRank(uuid, rank));
+    }
+
+    public CompletableFuture<Document> getJoinData(UUID uuid, String... entries) {
+        return supply(h -> h.getJoinData(uuid, entries));
+    }
+
+    public CompletableFuture<PlayerProfile> getPlayerProfile(UUID uuid) {
+        return supply(h -> h.getPlayerProfile(uuid));
+    }
+
+    public CompletableFuture<Map<String, Boolean>> getPermissions(Rank rank) {
+        return supply(h -> h.getPermissions(rank));
+    }
+
+    public CompletableFuture<Void> setPermission(String node, Rank rank, boolean value) {
+        return run(h -> h.setPermission(node, rank, value));
+    }
+
+    public CompletableFuture<Void> unsetPermission(String node, Rank rank) {
+        return run(h -> h.unsetPermission(node, rank));
+    }
+
+    /* Rewards and Friends */
+
+    public CompletableFuture<Document> getMonthlyRewards(UUID uuid) {
+        return supply(h -> h.getMonthlyRewards(uuid));
+    }
+
+    public CompletableFuture<Document> getVoteData(UUID uuid) {
+        return supply(h -> h.getVoteData(uuid));
+    }
+
+    public CompletableFuture<List<UUID>> getFriendList(UUID uuid) {
+        return supply(h -> h.getFriendList(uuid));
+    }
+
+    public CompletableFuture<List<UUID>> getRequestList(UUID uuid) {
+        return supply(h -> h.getRequestList(uuid));
+    }
+
+    public CompletableFuture<Void> updateMonthlyRewardData(UUID uuid, long settler, long dweller, long noble, long majestic, long honorable) {
+        return run(h -> h.updateMonthlyRewardData(uuid, settler, dweller, noble, majestic, honorable));
+    }
+
+    /* Park Methods */
+
+    public CompletableFuture<Void> updateFastPassData(UUID uuid, long fastPass) {
+        return run(h -> h.updateFastPassData(uuid, fastPass));
+    }
+
+    public CompletableFuture<Void> updateFPData(UUID uuid, int slow, int moderate, int thrill, int slowday, int moderateday, int thrillday) {
+        return run(h -> h.updateFPData(uuid, slow, moderate, thrill, slowday, moderateday, thrillday));
+    }
+
+    public CompletableFuture<Void> addFastPass(UUID uuid, int count) {
+        return run(h -> h.addFastPass(uuid, count));
+    }
+
+    public CompletableFuture<Void> chargeFastPass(UUID uuid, int amount) {
+        return run(h -> h.chargeFastPass(uuid, amount));
+    }
+
+    public CompletableFuture<Document> getHotels() {
+        return supply(MongoHandler::getHotels);
+    }
+
+    public CompletableFuture<Document> getHotelMessages() {
+        return supply(MongoHandler::getHotelMessages);
+    }
+
+    public CompletableFuture<List<Document>> getHotelMessages(UUID uuid) {
+        return supply(h -> h.getHotelMessages(uuid).into(new ArrayList<>()));
+    }
+
+    public CompletableFuture<Document> getParkJoinData(UUID uuid, String... parkEntries) {
+        return supply(h -> h.getParkJoinData(uuid, parkEntries));
+    }
+
+    public CompletableFuture<Document> getParkData(UUID uuid, String limit) {
+        return supply(h -> h.getParkData(uuid, limit));
+    }
+
+    public CompletableFuture<String> getParkValue(UUID uuid, String key) {
+        return supply(h -> h.getParkValue(uuid, key));
+    }
+
+    public CompletableFuture<Void> setParkValue(UUID uuid, String key, Object value) {
+        return run(h -> h.setParkValue(uuid, key, value));
+    }
+
+    public CompletableFuture<Void> setParkStorage(UUID uuid, String key, Document doc) {
+        return run(h -> h.setParkStorage(uuid, key, doc));
+    }
+
+    public CompletableFuture<Document> getMagicBandData(UUID uuid) {
+        return supply(h -> h.getMagicBandData(uuid));
+    }
+
+    public CompletableFuture<String> getMagicBandNameColor(UUID uuid) {
+        return supply(h -> h.getMagicBandNameColor(uuid));
+    }
+
+    public CompletableFuture<String> getMagicBandType(UUID uuid) {
+        return supply(h -> h.getMagicBandType(uuid));
+    }
+
+    public CompletableFuture<Void> setMagicBandData(UUID uuid, String key, String value) {
+        return run(h -> h.setMagicBandData(uuid, key, value));
+    }
+
+    public CompletableFuture<Object> getParkSetting(UUID uuid, String setting) {
+        return supply(h -> h.getParkSetting(uuid, setting));
+    }
+
+    public CompletableFuture<Void> setParkSetting(UUID uuid, String setting, Object value) {
+        return run(h -> h.setParkSetting(uuid, setting, value));
+    }
+
+    public CompletableFuture<Boolean> getBuildMode(UUID uuid) {
+        return supply(h -> h.getBuildMode(uuid));
+    }
+
+    public CompletableFuture<Void> setBuildMode(UUID uuid, boolean value) {
+        return run(h -> h.setBuildMode(uuid, value));
+    }
+
+    public CompletableFuture<Void> setInventorySize(UUID uuid, String type, int size, int resort) {
+        return run(h -> h.setInventorySize(uuid, type, size, resort));
+    }
+
+    public CompletableFuture<ArrayList> getRideCounterData(UUID uuid) {
+        return supply(h -> h.getRideCounterData(uuid));
+    }
+
+    public CompletableFuture<Void> logRideCounter(UUID uuid, String name) {
+        return run(h -> h.logRideCounter(uuid, name));
+    }
+
+    public CompletableFuture<List<Document>> getRideCounterLeaderboard(String name, int amount) {
+        return supply(h -> h.getRideCounterLeaderboard(name, amount));
+    }
+
+    public CompletableFuture<ArrayList> getAutographs(UUID uuid) {
+        return supply(h -> h.getAutographs(uuid));
+    }
+
+    public CompletableFuture<Void> signBook(UUID player, String sender, String message) {
+        return run(h -> h.signBook(player, sender, message));
+    }
+
+    public CompletableFuture<Void> deleteAutograph(UUID uuid, String sender, long time) {
+        return run(h -> h.deleteAutograph(uuid, sender, time));
+    }
+
+    public CompletableFuture<List<Document>> getOutfits() {
+        return getOutfits(-1);
+    }
+
+    public CompletableFuture<List<Document>> getOutfits(int resort) {
+        return supply(h -> h.getOutfits(resort).into(new ArrayList<>()));
+    }
+
+    public CompletableFuture<ArrayList> getOutfitPurchases(UUID uuid) {
+        return supply(h -> h.getOutfitPurchases(uuid));
+    }
+
+    public CompletableFuture<Void> setOutfitCode(UUID uuid, String code) {
+        return run(h -> h.setOutfitCode(uuid, code));
+    }
+
+    public CompletableFuture<Void> purchaseOutfit(UUID uuid, int id) {
+        return run(h -> h.purchaseOutfit(uuid, id));
+    }
+
+    public CompletableFuture<Void> createOutfit(String name, int hid, byte hdata, String head, int cid, byte cdata, String chestplate,
+                                                int lid, byte ldata, String leggings, int bid, byte bdata, String boots, int resort) {
+        return run(h -> h.createOutfit(name, hid, hdata, head, cid, cdata, chestplate, lid, ldata, leggings, bid, bdata, boots, resort));
+    }
+
+    public CompletableFuture<Void> createOutfitNew(String name, String head, String shirt, String pants, String boots, int resort) {
+        return run(h -> h.createOutfitNew(name, head, shirt, pants, boots, resort));
+    }
+
+    public CompletableFuture<Void> deleteOutfit(int id) {
+        return run(h -> h.deleteOutfit(id));
+    }
+
+    public CompletableFuture<List<Document>> getScheduledShows() {
+        return supply(h -> h.getScheduledShows().into(new ArrayList<>()));
+    }
+
+    public CompletableFuture<Void> updateScheduledShows(List<Document> shows) {
+        return run(h -> h.updateScheduledShows(shows));
+    }
+
+    public CompletableFuture<List<Document>> getOldStorageDocuments(UUID uuid) {
+        return supply(h -> h.getOldStorageDocuments(uuid).into(new ArrayList<>()));
+    }
+
+    /* Creative Methods */
+
+    public CompletableFuture<Document> getCreativeData(UUID uuid) {
+        return supply(h -> h.getCreativeData(uuid));
+    }
+
+    public CompletableFuture<Object> getCreativeValue(UUID uuid, String key) {
+        return supply(h -> h.getCreativeValue(uuid, key));
+    }
+
+    public CompletableFuture<Void> setCreativeValue(UUID uuid, String key, Object value) {
+        return run(h -> h.setCreativeValue(uuid, key, value));
+    }
+
+    public CompletableFuture<List<String>> getCreatorMembers() {
+        return supply(MongoHandler::getCreatorMembers);
+    }
+
+    public CompletableFuture<Void> logActivity(UUID uuid, String action, String description) {
+        return run(h -> h.logActivity(uuid, action, description));
+    }
+
+    /* Server Methods */
+
+    public CompletableFuture<Void> setServerOnline(String instanceName, String serverType, boolean playground, boolean online) {
+        return run(h -> h.setServerOnline(instanceName, serverType, playground, online));
+    }
+
+    public CompletableFuture<Void> setPlayerCount(String serverName, boolean playground, int size) {
+        return run(h -> h.setPlayerCount(serverName, playground, size));
+    }
+
+    public CompletableFuture<Integer> getPlayerCount() {
+        return supply(MongoHandler::getPlayerCount);
+    }
+
+    public CompletableFuture<Integer> getNetworkPlayerCount(long timeout) {
+        return supply(h -> h.getNetworkPlayerCount(timeout));
+    }
+
+    /* Online Data Methods */
+
+    public CompletableFuture<Void> setOnlineDataValue(UUID uuid, String key, Object value) {
+        return run(h -> h.setOnlineDataValue(uuid, key, value));
+    }
+
+    public CompletableFuture<Void> setOnlineDataValueConcurrentSafe(UUID uuid, String key, Object newValue, Object currentValue) {
+        return run(h -> h.setOnlineDataValueConcurrentSafe(uuid, key, newValue, currentValue));
+    }
+
+    public CompletableFuture<Object> getOnlineDataValue(UUID uuid, String key) {
+        return supply(h -> h.getOnlineDataValue(uuid, key));
+    }
+}
@@ -2,6 +2,7 @@ package network.palace.core.mongo;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.Block;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
 import com.mongodb.client.FindIterable;
@@ -11,6 +12,7 @@ import com.mongodb.client.model.*;
 import lombok.Getter;
 import network.palace.core.Core;
 import network.palace.core.economy.currency.CurrencyType;
+import network.palace.core.economy.currency.Transaction;
 import network.palace.core.economy.honor.HonorMapping;
 import network.palace.core.economy.honor.TopHonorReport;
 import network.palace.core.events.EconomyUpdateEvent;
@@ -22,10 +24,12 @@ import network.palace.core.resource.ResourcePack;
 import network.palace.core.tracking.GameType;
 import network.palace.core.tracking.StatisticType;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * @author Marc
@@ -49,9 +53,92 @@ public class MongoHandler {
     private MongoCollection<Document> warpsCollection = null;
     private MongoCollection<Document> serversCollection = null;
     private MongoCollection<Document> storageCollection = null;
+    @Getter private TransactionLedger transactionLedger = null;
+    @Getter private MongoIndexManager indexManager = null;
+    private AsyncMongoHandler asyncHandler = null;
+    private PlayerDocumentCache playerCache = null;
 
     public MongoHandler() {
         connect();
+        asyncHandler = new AsyncMongoHandler(this, Core.getCoreConfig().getInt("db.async.threads", 4),
+                Core.getCoreConfig().getInt("db.async.queue-size", 1024));
+        // Off by default, see PlayerDocumentCache for when it's safe to turn on
+        if (Core.getCoreConfig().getBoolean("db.write-behind.enabled", false)) {
+            playerCache = new PlayerDocumentCache(playerCollection, "parks", "creative");
+            long interval = Core.getCoreConfig().getLong("db.write-behind.interval", 100L);
+            Core.runTaskTimerAsynchronously(playerCache::flush, interval, interval);
+        }
+        if (Core.getCoreConfig().getBoolean("db.indexes.enabled", true)) {
+            Core.runTaskAsynchronously(Core.getInstance(), () -> {
+                indexManager.ensureIndexes();
+                if (Core.getCoreConfig().getBoolean("db.indexes.audit", true)) indexManager.audit();
+            });
+        }
+    }
+
+    /**
+     * Get the non-blocking version of this handler
+     *
+     * @return the async handler
+     * @implNote Prefer this over the blocking methods whenever the caller is on the main server thread
+     */
+    public AsyncMongoHandler async() {
+        return asyncHandler;
+    }
+
+    /**
+     * Start caching writes for a player who is online on this server
+     *
+     * @param uuid the uuid of the player
+     * @see PlayerDocumentCache
+     */
+    public void trackPlayer(UUID uuid) {
+        if (playerCache != null) playerCache.track(uuid);
+    }
+
+    /**
+     * Flush cached writes for a player and stop caching them
+     *
+     * @param uuid the uuid of the player
+     */
+    public void untrackPlayer(UUID uuid) {
+        if (playerCache != null) playerCache.untrack(uuid);
+    }
+
+    /**
+     * Flush cached writes for every player
+     */
+    public void flushPlayerCache() {
+        if (playerCache != null) playerCache.flush();
+    }
+
+    /**
+     * Get the write-behind player cache
+     *
+     * @return the cache, or null if it's disabled
+     */
+    public PlayerDocumentCache getPlayerCache() {
+        return playerCache;
+    }
+
+    private boolean cachedSet(UUID uuid, String path, Object value) {
+        return playerCache != null && playerCache.set(uuid, path, value);
+    }
+
+    private Object cachedGet(UUID uuid, String path, Supplier<Object> fallback) {
+        return playerCache == null ? fallback.get() : playerCache.get(uuid, path, fallback);
+    }
+
+    /**
+     * Make sure a write or read that bypasses the player cache sees the player's pending writes
+     *
+     * @param uuid the uuid of the player
+     * @param root the top-level field that will be written to, or null if nothing will be written
+     */
+    private void bypassCache(UUID uuid, String root) {
+        if (playerCache == null) return;
+        playerCache.flush(uuid);
+        if (root != null) playerCache.invalidate(uuid, root);
     }
 
     /**
@@ -82,6 +169,8 @@ public class MongoHandler {
         warpsCollection = database.getCollection("warps");
         serversCollection = database.getCollection("servers");
         storageCollection = database.getCollection("storage");
+        transactionLedger = new TransactionLedger(database.getCollection("transactions"), playerCollection);
+        indexManager = new MongoIndexManager(database);
     }
 
     /* Player Methods */
@@ -406,11 +495,93 @@ public class MongoHandler {
      * @param set    true if the value should be set to amount, false if existing value should be incremented
      */
     public void changeAmount(UUID uuid, int amount, String source, CurrencyType type, boolean set) {
-        playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), set ? Updates.set(type.getName(), amount) : Updates.inc(type.getName(), amount));
-        Document doc = new Document("amount", amount).append("type", type.getName()).append("source", source)
-                .append("server", Core.getInstanceName()).append("timestamp", System.currentTimeMillis() / 1000);
-        playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.push("transactions", doc));
-        Core.runTask(() -> new EconomyUpdateEvent(uuid, getCurrency(uuid, type), type).call());
+        Document after = playerCollection.findOneAndUpdate(Filters.eq("uuid", uuid.toString()),
+                set ? Updates.set(type.getName(), amount) : Updates.inc(type.getName(), amount),
+                new FindOneAndUpdateOptions().projection(new Document(type.getName(), 1)).returnDocument(ReturnDocument.AFTER));
+        if (after == null) return;
+        recordTransactions(Collections.singletonList(TransactionLedger.entry(uuid, amount, type.getName(), source, System.currentTimeMillis() / 1000)));
+        int balance = (int) after.getOrDefault(type.getName(), 0);
+        Core.runTask(() -> new EconomyUpdateEvent(uuid, balance, type).call());
+    }
+
+    /**
+     * Apply a batch of queued transactions with a single bulk write
+     * <p>
+     * All of a player's transactions are merged into one update that increments their balances. The post-update
+     * balances of all players in the batch are then read back with one query, and the applied transactions are
+     * added to the {@link TransactionLedger}.
+     *
+     * @param transactions the transactions, where a null currency type means honor
+     * @return the report of which updates were applied, and the resulting balances
+     * @implNote Only an error from the bulk write itself is thrown, in which case none of the transactions should be
+     * considered applied. If the balances can't be read back afterwards, the report is missing them instead.
+     */
+    public TransactionReport processTransactions(List<Transaction> transactions) {
+        Map<UUID, List<Transaction>> byPlayer = new LinkedHashMap<>();
+        for (Transaction transaction : transactions) {
+            byPlayer.computeIfAbsent(transaction.getPlayerId(), uuid -> new ArrayList<>()).add(transaction);
+        }
+        List<UUID> order = new ArrayList<>(byPlayer.keySet());
+        List<WriteModel<Document>> models = new ArrayList<>();
+        Document projection = new Document("uuid", 1);
+        long timestamp = System.currentTimeMillis() / 1000;
+        for (UUID uuid : order) {
+            Map<String, Integer> increments = new LinkedHashMap<>();
+            for (Transaction transaction : byPlayer.get(uuid)) {
+                String field = transaction.getType() == null ? "honor" : transaction.getType().getName();
+                increments.merge(field, transaction.getAmount(), Integer::sum);
+                projection.append(field, 1);
+            }
+            List<Bson> updates = new ArrayList<>();
+            increments.forEach((field, amount) -> updates.add(Updates.inc(field, amount)));
+            models.add(new UpdateOneModel<>(Filters.eq("uuid", uuid.toString()), Updates.combine(updates)));
+        }
+        Set<UUID> failed = new HashSet<>();
+        Map<UUID, Document> balances = new HashMap<>();
+        if (models.isEmpty()) return new TransactionReport(failed, balances);
+        try {
+            playerCollection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            e.getWriteErrors().forEach(error -> failed.add(order.get(error.getIndex())));
+            Core.logMessage("MongoHandler", failed.size() + " of " + order.size() + " transaction updates failed: " + e.getMessage());
+        }
+        List<String> applied = new ArrayList<>();
+        List<Document> entries = new ArrayList<>();
+        for (UUID uuid : order) {
+            if (failed.contains(uuid)) continue;
+            applied.add(uuid.toString());
+            for (Transaction transaction : byPlayer.get(uuid)) {
+                entries.add(TransactionLedger.entry(uuid, transaction.getAmount(),
+                        transaction.getType() == null ? "honor" : transaction.getType().getName(), transaction.getSource(), timestamp));
+            }
+        }
+        recordTransactions(entries);
+        if (!applied.isEmpty()) {
+            // The updates are already applied, so failing to read the balances back mustn't fail the batch
+            try {
+                for (Document doc : playerCollection.find(Filters.in("uuid", applied)).projection(projection)) {
+                    balances.put(UUID.fromString(doc.getString("uuid")), doc);
+                }
+            } catch (Exception e) {
+                Core.logMessage("MongoHandler", "Error reading balances after applying " + applied.size() + " transaction updates: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        return new TransactionReport(failed, balances);
+    }
+
+    /**
+     * Add entries to the ledger after the balances they belong to have already been changed
+     *
+     * @implNote A failure is logged instead of thrown, since the balance change itself can't be rolled back
+     */
+    private void recordTransactions(List<Document> entries) {
+        try {
+            transactionLedger.record(entries);
+        } catch (Exception e) {
+            Core.logMessage("MongoHandler", "Error recording " + entries.size() + " transactions in the ledger: " + e.getMessage());
+            e.printStackTrace();
+        }
     }
 
     /* Game Methods */
@@ -494,15 +665,7 @@ public class MongoHandler {
      * @param source the source of the transaction
      */
     public void addHonor(UUID uuid, int amount, String source) {
-        playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.inc("honor", amount));
-        Document doc = new Document("amount", amount).append("type", "honor").append("source", source)
-                .append("server", Core.getInstanceName()).append("timestamp", System.currentTimeMillis() / 1000);
-        playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.push("transactions", doc));
-        CPlayer tp;
-        if ((tp = Core.getPlayerManager().getPlayer(uuid)) != null) {
-            tp.loadHonor(getHonor(uuid));
-            Core.getHonorManager().displayHonor(tp);
-        }
+        updateHonor(uuid, Updates.inc("honor", amount), amount, source);
     }
 
     /**
@@ -513,15 +676,21 @@ public class MongoHandler {
      * @param source the source of the transaction
      */
     public void setHonor(UUID uuid, int amount, String source) {
-        playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("honor", amount));
-        Document doc = new Document("amount", amount).append("type", "honor").append("source", source)
-                .append("server", Core.getInstanceName()).append("timestamp", System.currentTimeMillis() / 1000);
-        playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.push("transactions", doc));
-        CPlayer tp;
-        if ((tp = Core.getPlayerManager().getPlayer(uuid)) != null) {
-            tp.loadHonor(getHonor(uuid));
+        updateHonor(uuid, Updates.set("honor", amount), amount, source);
+    }
+
+    private void updateHonor(UUID uuid, Bson update, int amount, String source) {
+        Document after = playerCollection.findOneAndUpdate(Filters.eq("uuid", uuid.toString()), update,
+                new FindOneAndUpdateOptions().projection(new Document("honor", 1)).returnDocument(ReturnDocument.AFTER));
+        if (after == null) return;
+        recordTransactions(Collections.singletonList(TransactionLedger.entry(uuid, amount, "honor", source, System.currentTimeMillis() / 1000)));
+        int honor = (int) after.getOrDefault("honor", 1);
+        Core.runTask(() -> {
+            CPlayer tp = Core.getPlayerManager().getPlayer(uuid);
+            if (tp == null) return;
+            tp.loadHonor(honor);
             Core.getHonorManager().displayHonor(tp);
-        }
+        });
     }
 
     /**
@@ -641,6 +810,17 @@ public class MongoHandler {
         return playerCollection.find(Filters.eq("uuid", uuid.toString())).projection(projection).first();
     }
 
+    /**
+     * Load everything needed when a player joins in a single query
+     *
+     * @param uuid the uuid
+     * @return the player's profile, with default values if the player isn't in the database yet
+     * @see PlayerProfile#FIELDS
+     */
+    public PlayerProfile getPlayerProfile(UUID uuid) {
+        return PlayerProfile.fromDocument(uuid, getJoinData(uuid, PlayerProfile.FIELDS));
+    }
+
     /**
      * Gets permissions.
      *
@@ -817,6 +997,7 @@ public class MongoHandler {
      * @param fastPass the timestamp a fastpass was last claimed
      */
     public void updateFastPassData(UUID uuid, long fastPass) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()),
                 Updates.set("parks.fastpass.lastClaimed", fastPass));
     }
@@ -833,12 +1014,14 @@ public class MongoHandler {
      * @param thrillday   the day of the year a thrill FP was last claimed
      */
     public void updateFPData(UUID uuid, int slow, int moderate, int thrill, int slowday, int moderateday, int thrillday) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("parks.fastpass",
                 new Document("slow", slow).append("moderate", moderate).append("thrill", thrill).append("sday", slowday)
                         .append("mday", moderateday).append("tday", thrillday)));
     }
 
     public void addFastPass(UUID uuid, int count) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()),
                 Updates.inc("parks.fastpass.count", count), new UpdateOptions().upsert(true));
     }
@@ -867,6 +1050,7 @@ public class MongoHandler {
      * @return a document with park join data
      */
     public Document getParkJoinData(UUID uuid, String... parkEntries) {
+        bypassCache(uuid, null);
         Document projection = null;
         for (String s : parkEntries) {
             if (projection == null) {
@@ -885,6 +1069,10 @@ public class MongoHandler {
      * @return a document with the requested data
      */
     public Document getParkData(UUID uuid, String limit) {
+        return (Document) cachedGet(uuid, limit == null || limit.isEmpty() ? "parks" : "parks." + limit, () -> loadParkData(uuid, limit));
+    }
+
+    private Document loadParkData(UUID uuid, String limit) {
         if (limit == null || limit.isEmpty()) {
             return (Document) getPlayer(uuid, new Document("parks", 1)).get("parks");
         }
@@ -921,6 +1109,7 @@ public class MongoHandler {
      * @param value the value
      */
     public void setParkValue(UUID uuid, String key, Object value) {
+        if (cachedSet(uuid, "parks." + key, value)) return;
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("parks." + key, value));
     }
 
@@ -934,6 +1123,7 @@ public class MongoHandler {
      * This aims to prevent multiple servers from modifying the same storage value simultaneously.
      */
     public void setParkStorage(UUID uuid, String key, Document doc) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(Filters.and(
                 Filters.eq("uuid", uuid.toString()),
                 Filters.eq("onlineData.parkStorageLock", Core.getInstanceName())
@@ -1057,6 +1247,7 @@ public class MongoHandler {
      * @param amount the amount to charge (usually 1)
      */
     public void chargeFastPass(UUID uuid, int amount) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.inc("parks.fastpass.count", -amount));
     }
 
@@ -1102,6 +1293,7 @@ public class MongoHandler {
      * @param code the value of the code
      */
     public void setOutfitCode(UUID uuid, String code) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("parks.outfit", code));
     }
 
@@ -1112,6 +1304,7 @@ public class MongoHandler {
      * @param id   the id of the outfit
      */
     public void purchaseOutfit(UUID uuid, int id) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()),
                 Updates.push("parks.outfitPurchases", new Document("id", id).append("time", System.currentTimeMillis() / 1000)));
     }
@@ -1200,6 +1393,7 @@ public class MongoHandler {
      * @param value   the value of the setting
      */
     public void setParkSetting(UUID uuid, String setting, Object value) {
+        if (cachedSet(uuid, "parks.settings." + setting, value)) return;
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("parks.settings." + setting, value));
     }
 
@@ -1211,6 +1405,7 @@ public class MongoHandler {
      * @param value the value to set the key to
      */
     public void setMagicBandData(UUID uuid, String key, String value) {
+        if (cachedSet(uuid, "parks.magicband." + key, value)) return;
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("parks.magicband." + key, value));
     }
 
@@ -1221,6 +1416,7 @@ public class MongoHandler {
      * @param value the value to set it to
      */
     public void setBuildMode(UUID uuid, boolean value) {
+        if (cachedSet(uuid, "parks.buildmode", value)) return;
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("parks.buildmode", value));
     }
 
@@ -1231,9 +1427,11 @@ public class MongoHandler {
      * @return the build mode value
      */
     public boolean getBuildMode(UUID uuid) {
-        Document doc = (Document) getPlayer(uuid, new Document("parks.buildmode", 1)).get("parks");
-        if (!doc.containsKey("buildmode")) return false;
-        return doc.getBoolean("buildmode");
+        Object value = cachedGet(uuid, "parks.buildmode", () -> {
+            Document doc = (Document) getPlayer(uuid, new Document("parks.buildmode", 1)).get("parks");
+            return doc.get("buildmode");
+        });
+        return value != null && (boolean) value;
     }
 
     /**
@@ -1245,6 +1443,7 @@ public class MongoHandler {
      * @param resort the resort
      */
     public void setInventorySize(UUID uuid, String type, int size, int resort) {
+        bypassCache(uuid, "parks");
         playerCollection.updateOne(new Document("uuid", uuid.toString()).append("parks.inventories.resort", resort),
                 Updates.set("parks.inventories.$." + type, size));
     }
@@ -1310,7 +1509,7 @@ public class MongoHandler {
      * @return a document containing creative data
      */
     public Document getCreativeData(UUID uuid) {
-        return (Document) getPlayer(uuid, new Document("creative", 1)).get("creative");
+        return (Document) cachedGet(uuid, "creative", () -> getPlayer(uuid, new Document("creative", 1)).get("creative"));
     }
 
     /**
@@ -1320,9 +1519,11 @@ public class MongoHandler {
      * @param key  the name of the setting
      */
     public Object getCreativeValue(UUID uuid, String key) {
-        Document doc = getPlayer(uuid, new Document("creative." + key, 1));
-        if (doc == null || doc.isEmpty()) return null;
-        return ((Document) doc.get("creative")).get(key);
+        return cachedGet(uuid, "creative." + key, () -> {
+            Document doc = getPlayer(uuid, new Document("creative." + key, 1));
+            if (doc == null || doc.isEmpty()) return null;
+            return ((Document) doc.get("creative")).get(key);
+        });
     }
 
     /**
@@ -1333,6 +1534,7 @@ public class MongoHandler {
      * @param value the value to set
      */
     public void setCreativeValue(UUID uuid, String key, Object value) {
+        if (cachedSet(uuid, "creative." + key, value)) return;
         playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.set("creative." + key, value));
     }
 
@@ -1355,6 +1557,8 @@ public class MongoHandler {
      * Close the connection with the MongoDB database
      */
     public void close() {
+        flushPlayerCache();
+        if (asyncHandler != null) asyncHandler.shutdown(5000);
         client.close();
     }
 
@@ -1363,6 +1567,15 @@ public class MongoHandler {
                 Filters.exists("playground", playground)), Updates.set("online", online));
     }
 
+    /**
+     * Set an onlineData field value
+     *
+     * @param uuid  the uuid
+     * @param key   the field's key
+     * @param value the new value, or null to remove the field
+     * @implNote onlineData is shared with the proxy and other servers, so this is written straight to the database
+     * instead of going through the player cache
+     */
     public void setOnlineDataValue(UUID uuid, String key, Object value) {
         if (value == null) {
             playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), Updates.unset("onlineData." + key));
@@ -1414,13 +1627,40 @@ public class MongoHandler {
     }
 
     public void setPlayerCount(String serverName, boolean playground, int size) {
-        serversCollection.updateOne(Filters.and(Filters.eq("name", serverName), Filters.exists("playground", playground)), Updates.set("count", size));
+        serversCollection.updateOne(Filters.and(Filters.eq("name", serverName), Filters.exists("playground", playground)),
+                Updates.combine(Updates.set("count", size), Updates.set("countUpdated", System.currentTimeMillis())));
     }
 
+    /**
+     * Count every online player document
+     *
+     * @return the amount of online players
+     * @implNote This scans the players collection, use {@link #getNetworkPlayerCount(long)} for periodic updates
+     */
     public int getPlayerCount() {
         return (int) playerCollection.count(Filters.eq("online", true));
     }
 
+    /**
+     * Get the amount of players online across the network by summing the count each server reports
+     *
+     * @param timeout how long ago in milliseconds a server must have reported its count for it to be included, so
+     *                servers that crashed without resetting their count are ignored
+     * @return the amount of online players
+     * @implNote Servers that don't report when their count was updated are included as long as they're online
+     */
+    public int getNetworkPlayerCount(long timeout) {
+        long cutoff = System.currentTimeMillis() - timeout;
+        Document result = serversCollection.aggregate(Arrays.asList(
+                Aggregates.match(Filters.or(
+                        Filters.gte("countUpdated", cutoff),
+                        Filters.and(Filters.exists("countUpdated", false), Filters.eq("online", true))
+                )),
+                Aggregates.group(null, Accumulators.sum("total", "$count"))
+        )).first();
+        return result == null ? 0 : ((Number) result.get("total")).intValue();
+    }
+
     public void banPlayer(UUID uuid, String reason, long expires, boolean permanent, String source) {
         Document banDocument = new Document("created", System.currentTimeMillis()).append("expires", expires)
                 .append("permanent", permanent).append("reason", reason)
@@ -0,0 +1,199 @@
+package network.palace.core.mongo;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import network.palace.core.Core;
+import org.bson.Document;
+import org.bukkit.ChatColor;
+
+import java.util.*;
+
+/**
+ * Declares the indexes the queries in {@link MongoHandler} rely on, creates any that are missing, and audits the
+ * query plans of the hot query shapes so collection scans are caught at startup instead of under load
+ */
+public class MongoIndexManager {
+    private final MongoDatabase database;
+    private final List<IndexSpec> indexes = new ArrayList<>();
+    private final List<QueryShape> queries = new ArrayList<>();
+    @Getter private List<QueryAudit> lastAudit = new ArrayList<>();
+
+    /**
+     * Instantiates a new index manager
+     *
+     * @param database the database
+     */
+    public MongoIndexManager(MongoDatabase database) {
+        this.database = database;
+        String sampleId = UUID.randomUUID().toString();
+
+        index("players", new Document("uuid", 1));
+        index("players", new Document("username", 1));
+        index("players", new Document("online", 1));
+        index("players", new Document("rank", 1));
+        index("players", new Document("tags", 1));
+        index("players", new Document("honor", -1));
+        index("ridecounters", new Document("uuid", 1));
+        index("ridecounters", new Document("name", 1).append("uuid", 1));
+        index("permissions", new Document("rank", 1));
+        index("servers", new Document("name", 1).append("type", 1));
+        index("storage", new Document("uuid", 1));
+        index("friends", new Document("sender", 1));
+        index("friends", new Document("receiver", 1));
+        index("transactions", new Document("uuid", 1).append("timestamp", -1));
+        index("transactions", new Document("uuid", 1).append("type", 1).append("timestamp", -1));
+        index("transactions", new Document("source", 1).append("timestamp", -1));
+
+        query("player by uuid", "players", new Document("uuid", sampleId), null);
+        query("player by username", "players", new Document("username", "Notch"), null);
+        query("online players", "players", new Document("online", true), null);
+        query("players by rank", "players", new Document("rank", "guest"), null);
+        query("players by tag", "players", new Document("tags", "guide"), null);
+        query("top honor", "players", new Document(), new Document("honor", -1));
+        query("ride counters by player", "ridecounters", new Document("uuid", sampleId), null);
+        query("ride counters by ride", "ridecounters", new Document("name", "Sample"), null);
+        query("permissions by rank", "permissions", new Document("rank", "guest"), null);
+        query("server by name", "servers", new Document("name", "Hub1").append("type", "Hub"), null);
+        query("storage by player", "storage", new Document("uuid", sampleId), null);
+        query("friends by player", "friends", new Document("$or", Arrays.asList(new Document("sender", sampleId),
+                new Document("receiver", sampleId))), null);
+        query("transactions by player", "transactions", new Document("uuid", sampleId), new Document("timestamp", -1));
+    }
+
+    private void index(String collection, Document keys) {
+        indexes.add(new IndexSpec(collection, keys));
+    }
+
+    private void query(String name, String collection, Document filter, Document sort) {
+        queries.add(new QueryShape(name, collection, filter, sort));
+    }
+
+    /**
+     * Create every declared index that doesn't exist yet
+     *
+     * @return the amount of indexes created
+     */
+    public int ensureIndexes() {
+        Map<String, Set<String>> existing = new HashMap<>();
+        int created = 0;
+        for (IndexSpec spec : indexes) {
+            try {
+                Set<String> keys = existing.computeIfAbsent(spec.getCollection(), this::getIndexKeys);
+                if (keys.contains(keyString(spec.getKeys()))) continue;
+                database.getCollection(spec.getCollection()).createIndex(spec.getKeys(), new IndexOptions().background(true));
+                keys.add(keyString(spec.getKeys()));
+                created++;
+                Core.logMessage("MongoIndexManager", "Created index " + keyString(spec.getKeys()) + " on " + spec.getCollection());
+            } catch (Exception e) {
+                Core.logMessage("MongoIndexManager", ChatColor.RED + "Error creating index " + keyString(spec.getKeys()) +
+                        " on " + spec.getCollection() + ": " + e.getMessage());
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Explain every hot query shape and log the ones that would scan their whole collection
+     *
+     * @return the audit results, also available from {@link #getLastAudit()}
+     */
+    public List<QueryAudit> audit() {
+        List<QueryAudit> results = new ArrayList<>();
+        for (QueryShape shape : queries) {
+            Document find = new Document("find", shape.getCollection()).append("filter", shape.getFilter());
+            if (shape.getSort() != null) find.append("sort", shape.getSort());
+            String plan;
+            try {
+                Document explain = database.runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+                Document planner = explain.get("queryPlanner", Document.class);
+                List<String> stages = new ArrayList<>();
+                if (planner != null) collectStages(planner.get("winningPlan"), stages);
+                plan = String.join(" > ", stages);
+            } catch (Exception e) {
+                plan = "ERROR: " + e.getMessage();
+            }
+            QueryAudit audit = new QueryAudit(shape.getName(), shape.getCollection(), plan);
+            if (!audit.isIndexed()) {
+                Core.logMessage("MongoIndexManager", ChatColor.RED + "Query '" + shape.getName() + "' on " +
+                        shape.getCollection() + " isn't using an index (" + plan + ")");
+            }
+            results.add(audit);
+        }
+        lastAudit = results;
+        return results;
+    }
+
+    private Set<String> getIndexKeys(String collection) {
+        Set<String> keys = new HashSet<>();
+        for (Document index : database.getCollection(collection).listIndexes()) {
+            Document key = index.get("key", Document.class);
+            if (key != null) keys.add(keyString(key));
+        }
+        return keys;
+    }
+
+    /**
+     * Walk a plan depth-first, collecting the stage names, i.e. 'FETCH > IXSCAN'
+     */
+    private static void collectStages(Object plan, List<String> stages) {
+        if (plan instanceof List) {
+            for (Object o : (List) plan) collectStages(o, stages);
+            return;
+        }
+        if (!(plan instanceof Document)) return;
+        Document doc = (Document) plan;
+        if (doc.containsKey("stage")) stages.add(doc.getString("stage"));
+        collectStages(doc.get("inputStage"), stages);
+        collectStages(doc.get("inputStages"), stages);
+        collectStages(doc.get("queryPlan"), stages);
+    }
+
+    /**
+     * Get a comparable form of an index key, since key values may have been stored as ints or doubles
+     */
+    private static String keyString(Document keys) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Object> e : keys.entrySet()) {
+            if (builder.length() > 0) builder.append(',');
+            Object value = e.getValue();
+            builder.append(e.getKey()).append(':').append(value instanceof Number ? ((Number) value).intValue() : value);
+        }
+        return builder.toString();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class IndexSpec {
+        private final String collection;
+        private final Document keys;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class QueryShape {
+        private final String name;
+        private final String collection;
+        private final Document filter;
+        private final Document sort;
+    }
+
+    /**
+     * The winning plan of an audited query shape
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class QueryAudit {
+        private final String name;
+        private final String collection;
+        /**
+         * The stages of the winning plan, outermost first
+         */
+        private final String plan;
+
+        public boolean isIndexed() {
+            return !plan.startsWith("ERROR") && !plan.contains("COLLSCAN");
+        }
+    }
+}
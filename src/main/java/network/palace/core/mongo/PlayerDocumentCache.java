@@ -0,0 +1,360 @@
+package network.palace.core.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import network.palace.core.Core;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind cache for the documents of players online on this server.
+ * <p>
+ * Writes are applied to the in-memory document and recorded as dirty paths. Dirty paths are flushed as one combined
+ * $set/$unset update per player on an interval, when the player leaves the server, and on shutdown. Repeated writes
+ * to the same path between flushes only cost a single database write.
+ * <p>
+ * Only the roots passed to the constructor (i.e. 'parks') are held in memory and served from the cache. Writes to
+ * other roots are still coalesced, and pending values for them are returned to readers until they've been flushed.
+ *
+ * <p>
+ * The cache is off unless db.write-behind.enabled is true. A player's pending writes are flushed on the main thread
+ * when they leave, but a proxy may connect them to their next server before this one sees them leave, and that server
+ * reads the same parks and creative data when they join. Only turn it on where players don't move between servers
+ * that share this data, or where the proxy waits for the previous server to release the player.
+ *
+ * @implNote Reads that go around {@link MongoHandler}'s cached methods (such as {@link MongoHandler#getPlayer(UUID)})
+ * won't see writes that haven't been flushed yet
+ */
+public class PlayerDocumentCache {
+    private static final Object UNSET = new Object();
+
+    private final MongoCollection<Document> playerCollection;
+    private final Set<String> cachedRoots;
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong recordedWrites = new AtomicLong();
+    private final AtomicLong flushedUpdates = new AtomicLong();
+
+    /**
+     * Instantiates a new player document cache
+     *
+     * @param playerCollection the players collection
+     * @param cachedRoots      the top-level fields that are loaded into memory and served from the cache
+     */
+    public PlayerDocumentCache(MongoCollection<Document> playerCollection, String... cachedRoots) {
+        this.playerCollection = playerCollection;
+        this.cachedRoots = new HashSet<>(Arrays.asList(cachedRoots));
+    }
+
+    /**
+     * Start caching a player's document
+     *
+     * @param uuid the uuid of the player
+     * @implNote If the player is rejoining before their previous writes were flushed, those writes are kept
+     */
+    public void track(UUID uuid) {
+        entries.compute(uuid, (id, entry) -> {
+            if (entry == null) return new Entry();
+            synchronized (entry) {
+                // The player may have been on another server since, so only their pending writes are still valid
+                entry.loadedRoots.clear();
+                entry.document.clear();
+                entry.closing = false;
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Flush and stop caching a player's document
+     *
+     * @param uuid the uuid of the player
+     * @implNote If the flush fails, the entry is kept until a later flush succeeds
+     */
+    public void untrack(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return;
+        entry.closing = true;
+        flush(uuid);
+    }
+
+    /**
+     * Check if a player's document is being cached
+     *
+     * @param uuid the uuid of the player
+     * @return true if writes for the player are being cached
+     */
+    public boolean isTracked(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        return entry != null && !entry.closing;
+    }
+
+    /**
+     * Record a $set for a player
+     *
+     * @param uuid  the uuid of the player
+     * @param path  the dot-separated path of the field
+     * @param value the value
+     * @return false if the player isn't tracked and the caller needs to write to the database itself
+     */
+    public boolean set(UUID uuid, String path, Object value) {
+        Entry entry = entries.get(uuid);
+        if (entry == null || entry.closing) return false;
+        synchronized (entry) {
+            entry.markDirty(path, value);
+            if (entry.loadedRoots.contains(root(path))) apply(entry.document, path, copy(value));
+        }
+        recordedWrites.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Record an $unset for a player
+     *
+     * @param uuid the uuid of the player
+     * @param path the dot-separated path of the field
+     * @return false if the player isn't tracked and the caller needs to write to the database itself
+     */
+    public boolean unset(UUID uuid, String path) {
+        Entry entry = entries.get(uuid);
+        if (entry == null || entry.closing) return false;
+        synchronized (entry) {
+            entry.markDirty(path, UNSET);
+            if (entry.loadedRoots.contains(root(path))) apply(entry.document, path, UNSET);
+        }
+        recordedWrites.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get a value from a player's document
+     *
+     * @param uuid     the uuid of the player
+     * @param path     the dot-separated path of the field
+     * @param fallback how to get the value if it can't be served from the cache
+     * @return a copy of the value, or null if it doesn't exist
+     */
+    public Object get(UUID uuid, String path, Supplier<Object> fallback) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return fallback.get();
+        String root = root(path);
+        synchronized (entry) {
+            if (cachedRoots.contains(root)) {
+                if (!entry.loadedRoots.contains(root)) load(uuid, entry, root);
+                return copy(navigate(entry.document, path));
+            }
+            for (Map.Entry<String, Object> dirty : entry.dirty.entrySet()) {
+                String key = dirty.getKey();
+                if (path.equals(key)) return dirty.getValue() == UNSET ? null : copy(dirty.getValue());
+                if (path.startsWith(key + ".")) {
+                    Object value = dirty.getValue();
+                    return value instanceof Document ? copy(navigate((Document) value, path.substring(key.length() + 1))) : null;
+                }
+            }
+        }
+        return fallback.get();
+    }
+
+    /**
+     * Drop a root from a player's in-memory document so it's reloaded on the next read
+     *
+     * @param uuid the uuid of the player
+     * @param root the top-level field
+     * @implNote Call this after writing to a cached root without going through the cache
+     */
+    public void invalidate(UUID uuid, String root) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return;
+        synchronized (entry) {
+            entry.loadedRoots.remove(root);
+            entry.document.remove(root);
+        }
+    }
+
+    /**
+     * Flush the pending writes for every player with a single bulk write
+     */
+    public void flush() {
+        List<UUID> uuids = new ArrayList<>();
+        List<Map<String, Object>> drained = new ArrayList<>();
+        List<WriteModel<Document>> models = new ArrayList<>();
+        for (Map.Entry<UUID, Entry> e : entries.entrySet()) {
+            Map<String, Object> pending = e.getValue().drain();
+            if (pending.isEmpty()) continue;
+            uuids.add(e.getKey());
+            drained.add(pending);
+            models.add(new UpdateOneModel<>(Filters.eq("uuid", e.getKey().toString()), toUpdate(pending)));
+        }
+        if (!models.isEmpty()) {
+            try {
+                playerCollection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+                flushedUpdates.addAndGet(models.size());
+            } catch (Exception e) {
+                Core.logMessage("PlayerDocumentCache", "Error flushing " + models.size() + " player updates: " + e.getMessage());
+                e.printStackTrace();
+                for (int i = 0; i < uuids.size(); i++) {
+                    Entry entry = entries.get(uuids.get(i));
+                    if (entry != null) entry.restore(drained.get(i));
+                }
+                return;
+            }
+        }
+        entries.entrySet().removeIf(e -> e.getValue().closing && e.getValue().isClean());
+    }
+
+    /**
+     * Flush the pending writes for a single player
+     *
+     * @param uuid the uuid of the player
+     */
+    public void flush(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return;
+        Map<String, Object> pending = entry.drain();
+        if (!pending.isEmpty()) {
+            try {
+                playerCollection.updateOne(Filters.eq("uuid", uuid.toString()), toUpdate(pending));
+                flushedUpdates.incrementAndGet();
+            } catch (Exception e) {
+                Core.logMessage("PlayerDocumentCache", "Error flushing updates for " + uuid + ": " + e.getMessage());
+                e.printStackTrace();
+                entry.restore(pending);
+                return;
+            }
+        }
+        if (entry.closing && entry.isClean()) entries.remove(uuid, entry);
+    }
+
+    /**
+     * Get the amount of writes recorded by the cache
+     *
+     * @return the amount of writes
+     */
+    public long getRecordedWrites() {
+        return recordedWrites.get();
+    }
+
+    /**
+     * Get the amount of updates sent to the database
+     *
+     * @return the amount of updates
+     */
+    public long getFlushedUpdates() {
+        return flushedUpdates.get();
+    }
+
+    private void load(UUID uuid, Entry entry, String root) {
+        Document doc = playerCollection.find(Filters.eq("uuid", uuid.toString())).projection(new Document(root, 1)).first();
+        Object value = doc == null ? null : doc.get(root);
+        if (value instanceof Document) {
+            entry.document.put(root, value);
+        } else {
+            entry.document.remove(root);
+        }
+        // Writes that haven't been flushed yet are newer than what's in the database
+        for (Map.Entry<String, Object> dirty : entry.dirty.entrySet()) {
+            if (root(dirty.getKey()).equals(root)) apply(entry.document, dirty.getKey(), copy(dirty.getValue()));
+        }
+        entry.loadedRoots.add(root);
+    }
+
+    private static Bson toUpdate(Map<String, Object> pending) {
+        List<Bson> updates = new ArrayList<>();
+        for (Map.Entry<String, Object> e : pending.entrySet()) {
+            updates.add(e.getValue() == UNSET ? Updates.unset(e.getKey()) : Updates.set(e.getKey(), e.getValue()));
+        }
+        return Updates.combine(updates);
+    }
+
+    private static String root(String path) {
+        int index = path.indexOf('.');
+        return index == -1 ? path : path.substring(0, index);
+    }
+
+    private static Object navigate(Document document, String path) {
+        Object current = document;
+        for (String key : path.split("\\.")) {
+            if (!(current instanceof Document)) return null;
+            current = ((Document) current).get(key);
+        }
+        return current;
+    }
+
+    private static void apply(Document document, String path, Object value) {
+        String[] keys = path.split("\\.");
+        Document current = document;
+        for (int i = 0; i < keys.length - 1; i++) {
+            Object next = current.get(keys[i]);
+            if (!(next instanceof Document)) {
+                if (value == UNSET) return;
+                next = new Document();
+                current.put(keys[i], next);
+            }
+            current = (Document) next;
+        }
+        if (value == UNSET) {
+            current.remove(keys[keys.length - 1]);
+        } else {
+            current.put(keys[keys.length - 1], value);
+        }
+    }
+
+    private static Object copy(Object value) {
+        if (!(value instanceof Document)) return value;
+        Document copy = new Document();
+        ((Document) value).forEach((k, v) -> copy.put(k, copy(v)));
+        return copy;
+    }
+
+    private static class Entry {
+        private final Document document = new Document();
+        private final Set<String> loadedRoots = new HashSet<>();
+        private LinkedHashMap<String, Object> dirty = new LinkedHashMap<>();
+        private volatile boolean closing = false;
+
+        /**
+         * Record a pending write, merging it with pending writes to overlapping paths so the combined update
+         * never contains conflicting paths
+         */
+        private void markDirty(String path, Object value) {
+            for (Map.Entry<String, Object> e : dirty.entrySet()) {
+                String key = e.getKey();
+                if (!path.startsWith(key + ".")) continue;
+                // A parent is already pending, fold this write into the parent's value
+                Document parent = e.getValue() instanceof Document ? (Document) e.getValue() : new Document();
+                apply(parent, path.substring(key.length() + 1), copy(value));
+                e.setValue(parent);
+                return;
+            }
+            dirty.keySet().removeIf(key -> key.startsWith(path + "."));
+            dirty.put(path, copy(value));
+        }
+
+        private synchronized Map<String, Object> drain() {
+            if (dirty.isEmpty()) return Collections.emptyMap();
+            Map<String, Object> pending = dirty;
+            dirty = new LinkedHashMap<>();
+            return pending;
+        }
+
+        /**
+         * Put back writes from a failed flush, unless they've been overwritten since
+         */
+        private synchronized void restore(Map<String, Object> pending) {
+            for (Map.Entry<String, Object> e : pending.entrySet()) {
+                String path = e.getKey();
+                boolean overwritten = dirty.keySet().stream().anyMatch(key -> key.equals(path) ||
+                        key.startsWith(path + ".") || path.startsWith(key + "."));
+                if (!overwritten) dirty.put(path, e.getValue());
+            }
+        }
+
+        private synchronized boolean isClean() {
+            return dirty.isEmpty();
+        }
+    }
+}
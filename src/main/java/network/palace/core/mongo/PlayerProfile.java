@@ -0,0 +1,90 @@
+package network.palace.core.mongo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import network.palace.core.player.Rank;
+import network.palace.core.player.RankTag;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Everything Core needs from a player's document when they join, loaded with a single query
+ *
+ * @see MongoHandler#getPlayerProfile(UUID)
+ */
+@AllArgsConstructor
+public class PlayerProfile {
+    /**
+     * The fields of the player document a profile is built from
+     */
+    public static final String[] FIELDS = {"rank", "tags", "onlineData", "achievements", "honor", "skin"};
+
+    @Getter private final UUID uuid;
+    @Getter private final Rank rank;
+    @Getter private final List<RankTag> tags;
+    @Getter private final Document onlineData;
+    @Getter private final List<Integer> achievements;
+    @Getter private final int honor;
+    @Getter private final String skinHash;
+    @Getter private final String skinSignature;
+
+    /**
+     * Get the resource pack the player currently has applied
+     *
+     * @return the pack name, or 'none' if they don't have one
+     */
+    public String getResourcePack() {
+        if (onlineData == null) return "none";
+        Object pack = onlineData.get("resourcePack");
+        return pack == null ? "none" : (String) pack;
+    }
+
+    /**
+     * Check whether the cached skin differs from the provided texture
+     *
+     * @param hash      the texture value
+     * @param signature the texture signature
+     * @return true if the skin cache needs to be updated
+     */
+    public boolean isSkinOutdated(String hash, String signature) {
+        return hash == null ? skinHash != null : !hash.equals(skinHash) || signature == null || !signature.equals(skinSignature);
+    }
+
+    /**
+     * Create a profile from a player document
+     *
+     * @param uuid the uuid of the player
+     * @param doc  the document containing the fields in {@link #FIELDS}, or null if the player doesn't exist yet
+     * @return the profile
+     */
+    @SuppressWarnings("rawtypes")
+    public static PlayerProfile fromDocument(UUID uuid, Document doc) {
+        if (doc == null) {
+            return new PlayerProfile(uuid, Rank.GUEST, new ArrayList<>(), null, new ArrayList<>(), 1, null, null);
+        }
+        Rank rank = doc.containsKey("rank") ? Rank.fromString(doc.getString("rank")) : Rank.GUEST;
+        List<RankTag> tags = new ArrayList<>();
+        if (doc.containsKey("tags")) {
+            for (Object o : doc.get("tags", ArrayList.class)) {
+                tags.add(RankTag.fromString((String) o));
+            }
+        }
+        List<Integer> achievements = new ArrayList<>();
+        if (doc.containsKey("achievements")) {
+            for (Object o : (List) doc.get("achievements")) {
+                achievements.add(((Document) o).getInteger("id"));
+            }
+        }
+        int honor = (int) doc.getOrDefault("honor", 1);
+        String skinHash = null, skinSignature = null;
+        Document skin = doc.get("skin", Document.class);
+        if (skin != null) {
+            skinHash = skin.getString("hash");
+            skinSignature = skin.getString("signature");
+        }
+        return new PlayerProfile(uuid, rank, tags, doc.get("onlineData", Document.class), achievements, honor, skinHash, skinSignature);
+    }
+}
@@ -0,0 +1,145 @@
+package network.palace.core.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import network.palace.core.Core;
+import network.palace.core.economy.currency.TransactionRecord;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Currency and honor transactions, stored in their own collection instead of an ever-growing array on the
+ * player document
+ *
+ * @implNote The indexes backing the history queries are declared in {@link MongoIndexManager}
+ */
+public class TransactionLedger {
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final MongoCollection<Document> ledgerCollection;
+    private final MongoCollection<Document> playerCollection;
+
+    /**
+     * Instantiates a new transaction ledger
+     *
+     * @param ledgerCollection the transactions collection
+     * @param playerCollection the players collection, only used to migrate old transaction arrays
+     */
+    public TransactionLedger(MongoCollection<Document> ledgerCollection, MongoCollection<Document> playerCollection) {
+        this.ledgerCollection = ledgerCollection;
+        this.playerCollection = playerCollection;
+    }
+
+    /**
+     * Create a ledger entry
+     *
+     * @param uuid      the uuid of the player
+     * @param amount    the amount of the transaction
+     * @param type      the currency name, or 'honor'
+     * @param source    the source of the transaction
+     * @param timestamp unix time in seconds
+     * @return the entry
+     */
+    public static Document entry(UUID uuid, int amount, String type, String source, long timestamp) {
+        return new Document("uuid", uuid.toString()).append("amount", amount).append("type", type).append("source", source)
+                .append("server", Core.getInstanceName()).append("timestamp", timestamp);
+    }
+
+    /**
+     * Add entries to the ledger
+     *
+     * @param entries the entries, created with {@link #entry(UUID, int, String, String, long)}
+     */
+    public void record(List<Document> entries) {
+        if (entries.isEmpty()) return;
+        ledgerCollection.insertMany(entries, new InsertManyOptions().ordered(false));
+    }
+
+    /**
+     * Get a page of transactions, newest first
+     *
+     * @param query    the filter
+     * @param page     the page, starting at 1
+     * @param pageSize the amount of transactions per page
+     * @return the transactions on the page
+     */
+    public List<TransactionRecord> getHistory(TransactionQuery query, int page, int pageSize) {
+        List<TransactionRecord> list = new ArrayList<>();
+        for (Document doc : ledgerCollection.find(query.toFilter()).sort(Sorts.descending("timestamp"))
+                .skip(Math.max(0, page - 1) * pageSize).limit(pageSize)) {
+            list.add(TransactionRecord.fromDocument(doc));
+        }
+        return list;
+    }
+
+    /**
+     * Stream every matching transaction, newest first, without holding them all in memory
+     *
+     * @param query  the filter
+     * @param action called for each transaction
+     */
+    public void forEach(TransactionQuery query, Consumer<TransactionRecord> action) {
+        for (Document doc : ledgerCollection.find(query.toFilter()).sort(Sorts.descending("timestamp")).batchSize(STREAM_BATCH_SIZE)) {
+            action.accept(TransactionRecord.fromDocument(doc));
+        }
+    }
+
+    /**
+     * Count the matching transactions
+     *
+     * @param query the filter
+     * @return the amount of transactions
+     */
+    public long count(TransactionQuery query) {
+        return ledgerCollection.countDocuments(query.toFilter());
+    }
+
+    /**
+     * Move the transactions arrays still stored on player documents into the ledger
+     * <p>
+     * Only the migrated elements are pulled from each array, so transactions pushed by servers that haven't been
+     * updated yet are picked up by running the migration again.
+     *
+     * @param progress called with a status message every 1000 players
+     * @return the amount of transactions migrated
+     * @implNote If a player's ledger entries were inserted but their array couldn't be cleaned up, the player is logged
+     * and their transactions will be duplicated if the migration is run again
+     */
+    public long migrate(Consumer<String> progress) {
+        long migrated = 0;
+        int players = 0;
+        for (Document player : playerCollection.find(Filters.and(Filters.exists("transactions"), Filters.ne("transactions", new ArrayList<>())))
+                .projection(new Document("uuid", 1).append("transactions", 1)).batchSize(100)) {
+            String uuid = player.getString("uuid");
+            List<?> transactions = player.get("transactions", List.class);
+            if (uuid == null || transactions == null) continue;
+            List<Document> entries = new ArrayList<>();
+            for (Object o : transactions) {
+                if (!(o instanceof Document)) continue;
+                Document entry = new Document("uuid", uuid);
+                ((Document) o).forEach(entry::append);
+                entries.add(entry);
+            }
+            try {
+                record(entries);
+            } catch (Exception e) {
+                Core.logMessage("TransactionLedger", "Error migrating transactions for " + uuid + ", skipping: " + e.getMessage());
+                continue;
+            }
+            try {
+                playerCollection.updateOne(Filters.eq("uuid", uuid), Updates.pullAll("transactions", transactions));
+                playerCollection.updateOne(Filters.and(Filters.eq("uuid", uuid), Filters.size("transactions", 0)), Updates.unset("transactions"));
+            } catch (Exception e) {
+                Core.logMessage("TransactionLedger", "Migrated transactions for " + uuid + " but couldn't remove them from the player document: " + e.getMessage());
+            }
+            migrated += entries.size();
+            if (++players % 1000 == 0) progress.accept("Migrated " + migrated + " transactions from " + players + " players");
+        }
+        progress.accept("Finished migrating " + migrated + " transactions from " + players + " players");
+        return migrated;
+    }
+}
@@ -0,0 +1,101 @@
+package network.palace.core.mongo;
+
+import com.mongodb.client.model.Filters;
+import network.palace.core.economy.currency.CurrencyType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Filter for transaction ledger queries. Every criterion is optional.
+ * <p>
+ * Example: {@code TransactionQuery.player(uuid).currency(CurrencyType.TOKENS).since(timestamp)}
+ *
+ * @see TransactionLedger
+ */
+public class TransactionQuery {
+    private UUID uuid;
+    private String type;
+    private String source;
+    private Long from;
+    private Long to;
+
+    /**
+     * Create a query matching every transaction
+     *
+     * @return the query
+     */
+    public static TransactionQuery all() {
+        return new TransactionQuery();
+    }
+
+    /**
+     * Create a query matching a player's transactions
+     *
+     * @param uuid the uuid of the player
+     * @return the query
+     */
+    public static TransactionQuery player(UUID uuid) {
+        return new TransactionQuery().uuid(uuid);
+    }
+
+    public TransactionQuery uuid(UUID uuid) {
+        this.uuid = uuid;
+        return this;
+    }
+
+    public TransactionQuery currency(CurrencyType type) {
+        this.type = type.getName();
+        return this;
+    }
+
+    /**
+     * Only match honor transactions
+     *
+     * @return the query
+     */
+    public TransactionQuery honor() {
+        this.type = "honor";
+        return this;
+    }
+
+    public TransactionQuery source(String source) {
+        this.source = source;
+        return this;
+    }
+
+    /**
+     * Only match transactions at or after a time
+     *
+     * @param timestamp unix time in seconds
+     * @return the query
+     */
+    public TransactionQuery since(long timestamp) {
+        this.from = timestamp;
+        return this;
+    }
+
+    /**
+     * Only match transactions before a time
+     *
+     * @param timestamp unix time in seconds
+     * @return the query
+     */
+    public TransactionQuery until(long timestamp) {
+        this.to = timestamp;
+        return this;
+    }
+
+    Bson toFilter() {
+        List<Bson> filters = new ArrayList<>();
+        if (uuid != null) filters.add(Filters.eq("uuid", uuid.toString()));
+        if (type != null) filters.add(Filters.eq("type", type));
+        if (source != null) filters.add(Filters.eq("source", source));
+        if (from != null) filters.add(Filters.gte("timestamp", from));
+        if (to != null) filters.add(Filters.lt("timestamp", to));
+        return filters.isEmpty() ? new Document() : Filters.and(filters);
+    }
+}
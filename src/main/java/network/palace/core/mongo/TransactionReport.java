@@ -0,0 +1,49 @@
+package network.palace.core.mongo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import network.palace.core.economy.currency.Transaction;
+import org.bson.Document;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The outcome of a batch of transactions applied with {@link MongoHandler#processTransactions(java.util.List)}
+ */
+@AllArgsConstructor
+public class TransactionReport {
+    /**
+     * The players whose update was rejected by the database
+     */
+    @Getter private final Set<UUID> failed;
+    /**
+     * The post-update balances of every player whose update succeeded, containing only the fields the batch changed
+     */
+    @Getter private final Map<UUID, Document> balances;
+
+    /**
+     * Check whether a transaction in the batch was applied
+     *
+     * @param transaction the transaction
+     * @return true if the transaction was applied
+     */
+    public boolean isApplied(Transaction transaction) {
+        return !failed.contains(transaction.getPlayerId());
+    }
+
+    /**
+     * Get a player's balance after the batch was applied
+     *
+     * @param uuid  the uuid of the player
+     * @param field the balance field, i.e. 'tokens' or 'honor'
+     * @return the balance, or null if the player's update failed, the field wasn't changed by the batch, or the
+     * balances couldn't be read back
+     */
+    public Integer getBalance(UUID uuid, String field) {
+        Document doc = balances.get(uuid);
+        if (doc == null || !doc.containsKey(field)) return null;
+        return ((Number) doc.get(field)).intValue();
+    }
+}
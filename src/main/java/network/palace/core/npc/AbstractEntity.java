@@ -1,10 +1,5 @@
 package network.palace.core.npc;
 
-import com.comphenix.protocol.PacketType;
-import com.comphenix.protocol.ProtocolLibrary;
-import com.comphenix.protocol.events.PacketAdapter;
-import com.comphenix.protocol.events.PacketEvent;
-import com.comphenix.protocol.utility.MinecraftReflection;
 import com.comphenix.protocol.wrappers.WrappedDataWatcher;
 import com.comphenix.protocol.wrappers.WrappedWatchableObject;
 import com.google.common.collect.ImmutableSet;
@@ -19,10 +14,13 @@ import network.palace.core.player.CPlayer;
 import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.util.Vector;
 
-import java.lang.ref.WeakReference;
+import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AbstractEntity implements Observable<NPCObserver> {
     @Getter protected Point location;
@@ -30,12 +28,15 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
     protected final Set<NPCObserver> observers;
     protected final Set<CPlayer> viewers;
     @Getter protected final WrappedDataWatcher dataWatcher;
-    protected WrappedDataWatcher lastDataWatcher;
-    //    private List<WrappedWatchableObject> lastDataWatcherObjects;
+    // The value last sent to every viewer for each data watcher index, and a mask of the indexes that have been sent
+    private Object[] sentValues = new Object[0];
+    private long sentMask = 0;
     @Getter protected boolean spawned;
     @Getter protected final int entityId;
     @Getter private int headYaw;
-    protected AbstractEntity.InteractWatcher listener;
+    // Minimum time between two clicks on this entity from the same player, 0 for no limit
+    @Getter @Setter private long clickCooldown = Core.getCoreConfig().getLong("npc.click-cooldown", 0);
+    private final Map<UUID, Long> lastClicks = new ConcurrentHashMap<>();
 
     private int[] passengers = new int[0];
     @Getter @Setter private boolean onFire, crouched, sprinting, visible = true, customNameVisible, gravity = true;
@@ -44,6 +45,8 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
     @Setter protected String customName;
 
     @Getter @Setter protected UUID uuid;
+    // The plugin that created this entity, used to clean up after it when it disables
+    @Getter private final Plugin owner = findOwner();
 
     public AbstractEntity(Point location, Set<CPlayer> observers, String title) {
         this.location = location.deepCopy();
@@ -58,11 +61,26 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
         } else {
             this.customName = title;
         }
-        this.entityId = Core.getSoftNPCManager().getIDManager().getNextID();
-    }
-
-    {
-        Core.getSoftNPCManager().getEntityRefs().add(new WeakReference<>(this));
+        this.entityId = Core.getSoftNPCManager().getIDManager().getNextID(this);
+    }
+
+    /**
+     * Find the plugin that is constructing this entity, by looking for the first class on the stack loaded by another
+     * plugin
+     */
+    private static Plugin findOwner() {
+        ClassLoader core = Core.class.getClassLoader();
+        // Plugin class loaders are the only URLClassLoaders, the server's own classes come from the app class loader
+        Optional<Class<?>> caller = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE)
+                .walk(frames -> frames.map(StackWalker.StackFrame::getDeclaringClass)
+                        .filter(c -> c.getClassLoader() != core && c.getClassLoader() instanceof URLClassLoader).findFirst());
+        if (caller.isPresent()) {
+            try {
+                return JavaPlugin.getProvidingPlugin(caller.get());
+            } catch (IllegalArgumentException | IllegalStateException ignored) {
+            }
+        }
+        return Core.getInstance();
     }
 
     protected void onUpdate() {
@@ -73,10 +91,6 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
 
     protected abstract EntityType getEntityType();
 
-    private InteractWatcher createNewInteractWatcher() {
-        return listener = new InteractWatcher(this);
-    }
-
     @Override
     public final void registerObservable(NPCObserver observer) {
         this.observers.add(observer);
@@ -114,31 +128,54 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
         return this.viewers.contains(player);
     }
 
+    /**
+     * Stop treating a player as a viewer without sending them a destroy packet, so it can be batched with others
+     *
+     * @param player the player
+     * @return true if the player was a viewer
+     */
+    final boolean untrack(CPlayer player) {
+        if (!isViewer(player)) return false;
+        removeViewer(player);
+        return true;
+    }
+
     public final void makeGlobal() {
         this.visibleTo.clear();
     }
 
+    /**
+     * Get the players this entity is shown to
+     *
+     * @return the players in this entity's world, which must not be modified
+     */
     protected final CPlayer[] getTargets() {
-        CPlayer[] cPlayers = (this.visibleTo.size() == 0 ? Core.getPlayerManager().getOnlinePlayers() : this.visibleTo).toArray(new CPlayer[this.visibleTo.size()]);
-        CPlayer[] players = new CPlayer[cPlayers.length];
+        CPlayer[] cPlayers = this.visibleTo.isEmpty() ? Core.getPlayerManager().getOnlinePlayerSnapshot() : this.visibleTo.toArray(new CPlayer[0]);
+        if (this.location.getWorld() == null) return cPlayers;
+        UUID world = this.location.getWorld().getUID();
         int x = 0;
-
         for (CPlayer player : cPlayers) {
-            UUID uid = player.getLocation().getWorld().getUID();
-            UUID uid1 = this.location.getWorld() != null ? location.getWorld().getUID() : null;
-
-            if (this.location.getWorld() != null && !uid.equals(uid1)) continue;
-            players[x] = player;
-            x++;
+            if (world.equals(player.getLocation().getWorld().getUID())) x++;
         }
-        return x == 0 ? new CPlayer[]{} : Arrays.copyOfRange(players, 0, x);
+        // Usually every player is in the same world, in which case the snapshot is returned as-is
+        if (x == cPlayers.length) return cPlayers;
+        CPlayer[] players = new CPlayer[x];
+        x = 0;
+        for (CPlayer player : cPlayers) {
+            if (world.equals(player.getLocation().getWorld().getUID())) players[x++] = player;
+        }
+        return players;
     }
 
     public void spawn() {
         if (spawned) return;
-        ProtocolLibrary.getProtocolManager().addPacketListener(createNewInteractWatcher());
         spawned = true;
-        CPlayer[] targets = getTargets();
+        SoftNPCManager manager = Core.getSoftNPCManager();
+        manager.getRegistry().register(this);
+        manager.getInteractionDispatcher().register(this);
+        manager.getSpatialIndex().update(this);
+        // Players out of range are shown the entity by the manager once they get close enough
+        CPlayer[] targets = Arrays.stream(getTargets()).filter(t -> manager.isInRange(t, this)).toArray(CPlayer[]::new);
         Arrays.asList(targets).forEach(t -> this.forceSpawn(t, false));
         update(targets, true);
     }
@@ -151,9 +188,11 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
 
     public void despawn() {
         if (!spawned) return;
-        ProtocolLibrary.getProtocolManager().removePacketListener(listener);
-        listener = null;
         spawned = false;
+        Core.getSoftNPCManager().getRegistry().unregister(this);
+        Core.getSoftNPCManager().getInteractionDispatcher().unregister(this);
+        lastClicks.clear();
+        Core.getSoftNPCManager().getSpatialIndex().remove(this);
         Arrays.asList(getTargets()).forEach(this::forceDespawn);
     }
 
@@ -223,43 +262,34 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
         try {
             if (!spawned) spawn();
             updateDataWatcher();
-            List<WrappedWatchableObject> watchableObjects = new ArrayList<>();
-
-            if (spawn) {
-                watchableObjects.addAll(dataWatcher.getWatchableObjects());
-            } else {
-                if (lastDataWatcher == null) {
-                    watchableObjects.addAll(dataWatcher.getWatchableObjects());
+            // A spawn update before anything has been sent goes to every target, so it can be used as the snapshot
+            boolean broadcast = !spawn || sentMask == 0;
+            List<WrappedWatchableObject> watchableObjects = spawn ? dataWatcher.getWatchableObjects() : changedObjects();
+            if (broadcast) snapshot(watchableObjects);
+
+            if (!watchableObjects.isEmpty()) {
+                WrapperPlayServerEntityMetadata packet = metadataPacket(watchableObjects);
+                int nameSlot = hasConditionalName() ? indexOf(watchableObjects, 2) : -1;
+                if (nameSlot < 0) {
+                    Arrays.asList(targets).forEach(packet::sendPacket);
                 } else {
-                    for (WrappedWatchableObject watchableObject : dataWatcher.getWatchableObjects()) {
-                        Object object = lastDataWatcher.getObject(watchableObject.getIndex());
-                        if (object == null || !object.equals(watchableObject.getValue())) {
-                            watchableObjects.add(watchableObject);
+                    // Only the custom name differs between viewers, so viewers with the same name share a packet
+                    Map<String, WrapperPlayServerEntityMetadata> byName = new HashMap<>();
+                    for (CPlayer target : targets) {
+                        String name = conditionalName.getCustomName(target);
+                        if (name == null) {
+                            packet.sendPacket(target);
+                            continue;
                         }
+                        byName.computeIfAbsent(name, n -> {
+                            List<WrappedWatchableObject> objects = new ArrayList<>(watchableObjects);
+                            objects.set(nameSlot, new WrappedWatchableObject(ProtocolLibSerializers.getString(2), n));
+                            return metadataPacket(objects);
+                        }).sendPacket(target);
                     }
                 }
             }
 
-            if (hasConditionalName()) {
-                for (CPlayer target : targets) {
-                    WrapperPlayServerEntityMetadata localPacket = new WrapperPlayServerEntityMetadata();
-                    for (WrappedWatchableObject watchableObject : watchableObjects) {
-                        if (watchableObject.getIndex() == 2) {
-                            watchableObject.setValue(conditionalName.getCustomName(target));
-                        }
-                    }
-                    localPacket.setMetadata(watchableObjects);
-                    localPacket.setEntityID(entityId);
-                    localPacket.sendPacket(target);
-                }
-            } else {
-                WrapperPlayServerEntityMetadata packet = new WrapperPlayServerEntityMetadata();
-                packet.setMetadata(watchableObjects);
-                packet.setEntityID(entityId);
-                Arrays.asList(targets).forEach(packet::sendPacket);
-                lastDataWatcher = deepClone(dataWatcher);
-            }
-
             if (passengers.length > 0) {
                 WrapperPlayServerMount packet = new WrapperPlayServerMount();
                 packet.setEntityID(entityId);
@@ -275,14 +305,47 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
         }
     }
 
-    private WrappedDataWatcher deepClone(WrappedDataWatcher dataWatcher) {
-        WrappedDataWatcher clone = new WrappedDataWatcher();
-        if (MinecraftReflection.watcherObjectExists()) {
-            dataWatcher.getWatchableObjects().forEach(object -> clone.setObject(object.getWatcherObject(), object));
-        } else {
-            dataWatcher.getWatchableObjects().forEach(object -> clone.setObject(object.getIndex(), object));
+    private WrapperPlayServerEntityMetadata metadataPacket(List<WrappedWatchableObject> watchableObjects) {
+        WrapperPlayServerEntityMetadata packet = new WrapperPlayServerEntityMetadata();
+        packet.setMetadata(watchableObjects);
+        packet.setEntityID(entityId);
+        return packet;
+    }
+
+    /**
+     * Get the data watcher entries whose values differ from the ones last sent to every viewer
+     * <p>
+     * The custom name is always included for entities with a conditional name, since each viewer's name can change
+     * without the base name changing.
+     */
+    private List<WrappedWatchableObject> changedObjects() {
+        List<WrappedWatchableObject> changed = new ArrayList<>();
+        boolean conditional = hasConditionalName();
+        for (WrappedWatchableObject watchableObject : dataWatcher.getWatchableObjects()) {
+            int index = watchableObject.getIndex();
+            if ((conditional && index == 2) || index >= 64 || (sentMask & (1L << index)) == 0
+                    || !Objects.equals(sentValues[index], watchableObject.getValue())) {
+                changed.add(watchableObject);
+            }
+        }
+        return changed;
+    }
+
+    private void snapshot(List<WrappedWatchableObject> watchableObjects) {
+        for (WrappedWatchableObject watchableObject : watchableObjects) {
+            int index = watchableObject.getIndex();
+            if (index >= 64) continue;
+            if (index >= sentValues.length) sentValues = Arrays.copyOf(sentValues, index + 1);
+            sentValues[index] = watchableObject.getValue();
+            sentMask |= 1L << index;
+        }
+    }
+
+    private static int indexOf(List<WrappedWatchableObject> watchableObjects, int index) {
+        for (int i = 0; i < watchableObjects.size(); i++) {
+            if (watchableObjects.get(i).getIndex() == index) return i;
         }
-        return clone;
+        return -1;
     }
 
     public final void move(Point point) {
@@ -315,7 +378,20 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
             packet = packet1;
         }
         Arrays.asList(getTargets()).forEach(packet::sendPacket);
+        relocate(newLocation);
+    }
+
+    /**
+     * Change where this entity is without sending it to anyone, for the movement engine which sends its own packets
+     *
+     * @param newLocation the new location
+     */
+    final void relocate(Point newLocation) {
+        final Point oldLocation = this.location;
         this.location = newLocation;
+        if (!Objects.equals(oldLocation.getWorld(), newLocation.getWorld()))
+            Core.getSoftNPCManager().getRegistry().changedWorld(this, oldLocation.getWorld());
+        Core.getSoftNPCManager().getSpatialIndex().update(this);
     }
 
     public final void addVelocity(Vector vector) {
@@ -363,6 +439,10 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
         sendYaw(getTargets());
     }
 
+    final void setHeadYaw(int headYaw) {
+        this.headYaw = headYaw;
+    }
+
     public final void sendYaw(CPlayer[] players) {
         WrapperPlayServerEntityHeadRotation packet = new WrapperPlayServerEntityHeadRotation();
         packet.setEntityID(entityId);
@@ -438,31 +518,22 @@ public abstract class AbstractEntity implements Observable<NPCObserver> {
         return this.conditionalName != null;
     }
 
-    protected static class InteractWatcher extends PacketAdapter {
-
-        private final AbstractEntity watchingFor;
-
-        public InteractWatcher(AbstractEntity watchingFor) {
-            super(Core.getInstance(), PacketType.Play.Client.USE_ENTITY);
-            this.watchingFor = watchingFor;
-        }
+    /**
+     * Record a click from a player if they're past the click cooldown
+     *
+     * @param player the player
+     * @return true if the click should be handled
+     */
+    final boolean tryClick(CPlayer player) {
+        if (clickCooldown <= 0) return true;
+        long now = System.currentTimeMillis();
+        Long last = lastClicks.get(player.getUniqueId());
+        if (last != null && now - last < clickCooldown) return false;
+        lastClicks.put(player.getUniqueId(), now);
+        return true;
+    }
 
-        @Override
-        public void onPacketReceiving(PacketEvent event) {
-            WrapperPlayClientUseEntity packet = new WrapperPlayClientUseEntity(event.getPacket());
-            if (packet.getTargetID() != watchingFor.getEntityId()) return;
-            CPlayer onlinePlayer = Core.getPlayerManager().getPlayer(event.getPlayer());
-            ClickAction clickAction = ClickAction.from(packet.getType().name());
-            if (clickAction != null) {
-                for (NPCObserver npcObserver : watchingFor.getObservers()) {
-                    try {
-                        npcObserver.onPlayerInteract(onlinePlayer, watchingFor, clickAction);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-            event.setCancelled(true);
-        }
+    final void forgetClicks(CPlayer player) {
+        lastClicks.remove(player.getUniqueId());
     }
 }
@@ -1,26 +1,79 @@
 package network.palace.core.npc;
 
 import network.palace.core.Core;
-import org.bukkit.World;
-import org.bukkit.entity.Entity;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hands out entity ids for client-side entities
+ * <p>
+ * Ids come from a range far above anything the server's own entity counter reaches, so they never need to be checked
+ * against the entities in the worlds. Ids given to an owner are recycled once the owner has been garbage collected.
+ */
 public class IDManager {
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    // Keeps the references themselves reachable until their owner is collected
+    private final Set<IdReference> references = new HashSet<>();
+    private int[] free = new int[16];
+    private int freeCount = 0;
+    private int next;
+
+    public IDManager() {
+        next = Core.getCoreConfig().getInt("npc.id-start", 1_000_000_000);
+    }
+
+    /**
+     * Get an id that is never recycled
+     *
+     * @return the id
+     */
+    public synchronized int getNextID() {
+        if (next == Integer.MAX_VALUE) throw new IllegalStateException("Ran out of entity ids");
+        return next++;
+    }
 
-    private int CURRENT = 2000;
+    /**
+     * Get an id for an owner, which is recycled after the owner is garbage collected
+     *
+     * @param owner the object using the id
+     * @return the id
+     */
+    public synchronized int getNextID(Object owner) {
+        reclaim();
+        int id = freeCount > 0 ? free[--freeCount] : getNextID();
+        references.add(new IdReference(owner, id, queue));
+        return id;
+    }
 
-    public int getNextID() {
-        do {
-            CURRENT++;
-        } while (isDuplicate(CURRENT));
-        return CURRENT;
+    /**
+     * Get the number of ids waiting to be reused
+     *
+     * @return the number of free ids
+     */
+    public synchronized int getFreeCount() {
+        reclaim();
+        return freeCount;
     }
 
-    private boolean isDuplicate(int id) {
-        for (World world : Core.getWorlds()) {
-            for (Entity entity : world.getEntities()) {
-                if (entity.getEntityId() == id) return true;
-            }
+    private void reclaim() {
+        IdReference reference;
+        while ((reference = (IdReference) queue.poll()) != null) {
+            references.remove(reference);
+            if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = reference.id;
+        }
+    }
+
+    private static class IdReference extends WeakReference<Object> {
+        private final int id;
+
+        private IdReference(Object owner, int id, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.id = id;
         }
-        return false;
     }
 }
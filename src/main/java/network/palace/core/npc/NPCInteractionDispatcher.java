@@ -0,0 +1,65 @@
+package network.palace.core.npc;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.events.PacketAdapter;
+import com.comphenix.protocol.events.PacketEvent;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import network.palace.core.Core;
+import network.palace.core.packets.server.entity.WrapperPlayClientUseEntity;
+import network.palace.core.player.CPlayer;
+
+/**
+ * Receives every entity interaction packet and passes the ones aimed at a spawned entity to its observers
+ * <p>
+ * Entities are looked up by id, so handling a click costs the same no matter how many entities are spawned.
+ *
+ * @implNote Packets are received off the main thread, so observers are called off the main thread too
+ */
+final class NPCInteractionDispatcher extends PacketAdapter {
+    private final IntObjectMap<AbstractEntity> entities = new IntObjectHashMap<>();
+
+    NPCInteractionDispatcher() {
+        super(Core.getInstance(), PacketType.Play.Client.USE_ENTITY);
+    }
+
+    void register(AbstractEntity entity) {
+        synchronized (entities) {
+            entities.put(entity.getEntityId(), entity);
+        }
+    }
+
+    void unregister(AbstractEntity entity) {
+        synchronized (entities) {
+            entities.remove(entity.getEntityId(), entity);
+        }
+    }
+
+    int size() {
+        synchronized (entities) {
+            return entities.size();
+        }
+    }
+
+    @Override
+    public void onPacketReceiving(PacketEvent event) {
+        WrapperPlayClientUseEntity packet = new WrapperPlayClientUseEntity(event.getPacket());
+        AbstractEntity entity;
+        synchronized (entities) {
+            entity = entities.get(packet.getTargetID());
+        }
+        if (entity == null) return;
+        event.setCancelled(true);
+        ClickAction clickAction = ClickAction.from(packet.getType().name());
+        if (clickAction == null) return;
+        CPlayer onlinePlayer = Core.getPlayerManager().getPlayer(event.getPlayer());
+        if (onlinePlayer == null || !entity.tryClick(onlinePlayer)) return;
+        for (NPCObserver npcObserver : entity.getObservers()) {
+            try {
+                npcObserver.onPlayerInteract(onlinePlayer, entity, clickAction);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package network.palace.core.npc;
+
+import lombok.Getter;
+import network.palace.core.Core;
+import network.palace.core.packets.server.entity.WrapperPlayServerEntityHeadRotation;
+import network.palace.core.packets.server.entity.WrapperPlayServerEntityTeleport;
+import network.palace.core.packets.server.entity.WrapperPlayServerRelEntityMoveLook;
+import network.palace.core.pathfinding.Point;
+import network.palace.core.player.CPlayer;
+import org.bukkit.Location;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Walks entities along paths, sending one movement update per entity each tick
+ * <p>
+ * Viewers close to an entity get a relative move every tick, and its head rotation when it turns. Viewers further away
+ * than the detail distance only get a teleport every few ticks, which the client smooths out. No more than the packet
+ * budget is sent in a tick; entities left over are moved without being sent and catch up with a teleport later, and
+ * the entity the budget ran out on goes first next tick.
+ */
+public final class NPCMovementEngine {
+    // A relative move can't go further than this in one packet
+    private static final double MAX_RELATIVE_MOVE = 8;
+
+    private final Map<AbstractEntity, Movement> movements = new LinkedHashMap<>();
+    private final double detailDistanceSquared;
+    private final int farInterval;
+    @Getter private final int packetBudget;
+    @Getter private final double defaultSpeed;
+
+    private int ticks = 0;
+    private int offset = 0;
+    @Getter private int lastPackets = 0;
+    @Getter private int lastSkipped = 0;
+
+    NPCMovementEngine() {
+        double detailDistance = Core.getCoreConfig().getDouble("npc.movement.detail-distance", 24);
+        detailDistanceSquared = detailDistance * detailDistance;
+        farInterval = Math.max(1, Core.getCoreConfig().getInt("npc.movement.far-interval", 10));
+        packetBudget = Math.max(1, Core.getCoreConfig().getInt("npc.movement.packet-budget", 1000));
+        defaultSpeed = Core.getCoreConfig().getDouble("npc.movement.speed", 4.3);
+        Core.runTaskTimer(Core.getInstance(), this::tick, 1L, 1L);
+    }
+
+    /**
+     * Walk an entity along a path at the default speed
+     *
+     * @param entity the entity, which must be spawned
+     * @param path   the positions to walk through
+     * @return a future completed with true when the entity reaches the end, or false if it's stopped first
+     */
+    public CompletableFuture<Boolean> follow(AbstractEntity entity, List<Point> path) {
+        return follow(entity, path, defaultSpeed);
+    }
+
+    /**
+     * Walk an entity along a path, replacing any path it's already following
+     *
+     * @param entity the entity, which must be spawned
+     * @param path   the positions to walk through
+     * @param speed  the speed in blocks per second
+     * @return a future completed with true when the entity reaches the end, or false if it's stopped first
+     */
+    public CompletableFuture<Boolean> follow(AbstractEntity entity, List<Point> path, double speed) {
+        if (!entity.isSpawned()) throw new IllegalStateException("You cannot move something that hasn't spawned yet!");
+        if (speed <= 0) throw new IllegalArgumentException("Speed must be positive");
+        stop(entity);
+        Movement movement = new Movement(entity, new ArrayList<>(path), speed / 20);
+        if (path.isEmpty()) {
+            movement.future.complete(true);
+            return movement.future;
+        }
+        movements.put(entity, movement);
+        return movement.future;
+    }
+
+    /**
+     * Stop an entity where it is
+     *
+     * @param entity the entity
+     */
+    public void stop(AbstractEntity entity) {
+        Movement movement = movements.remove(entity);
+        if (movement != null) finish(movement, false);
+    }
+
+    public boolean isMoving(AbstractEntity entity) {
+        return movements.containsKey(entity);
+    }
+
+    public int getMoving() {
+        return movements.size();
+    }
+
+    /**
+     * Turn the blocks of a path found by the pathfinder into positions to walk through
+     *
+     * @param blocks the blocks to walk on
+     * @return the center of the top of each block
+     */
+    public static List<Point> fromBlocks(List<Point> blocks) {
+        List<Point> path = new ArrayList<>(blocks.size());
+        for (Point block : blocks) {
+            path.add(Point.of(Math.floor(block.getX()) + 0.5, Math.floor(block.getY()) + 1, Math.floor(block.getZ()) + 0.5, block.getWorld()));
+        }
+        return path;
+    }
+
+    private void tick() {
+        ticks++;
+        int packets = 0, skipped = 0;
+        List<Movement> active = new ArrayList<>(movements.values());
+        int size = active.size();
+        for (int i = 0; i < size; i++) {
+            Movement movement = active.get((i + offset) % size);
+            AbstractEntity entity = movement.entity;
+            if (!entity.isSpawned()) {
+                movements.remove(entity);
+                finish(movement, false);
+                continue;
+            }
+            try {
+                Point from = entity.getLocation();
+                Point to = movement.advance(from);
+                entity.relocate(to);
+                if (packets >= packetBudget) {
+                    if (skipped++ == 0) offset = (i + offset) % size;
+                    movement.synced.clear();
+                } else {
+                    packets += send(movement, from, to, packetBudget - packets);
+                }
+                if (movement.isDone()) {
+                    movements.remove(entity);
+                    finish(movement, true);
+                }
+            } catch (Exception e) {
+                Core.logMessage("NPCMovementEngine", "Error moving entity " + entity.getEntityId() + ": " + e.getMessage());
+                e.printStackTrace();
+                movements.remove(entity);
+                finish(movement, false);
+            }
+        }
+        if (skipped == 0) offset = 0;
+        lastPackets = packets;
+        lastSkipped = skipped;
+    }
+
+    /**
+     * Send a tick of movement to an entity's viewers
+     *
+     * @return the number of packets sent
+     */
+    private int send(Movement movement, Point from, Point to, int budget) {
+        AbstractEntity entity = movement.entity;
+        boolean fine = Objects.equals(from.getWorld(), to.getWorld()) && from.distanceSquared(to) < MAX_RELATIVE_MOVE * MAX_RELATIVE_MOVE;
+        boolean farTick = (ticks + entity.getEntityId()) % farInterval == 0;
+        int headYaw = (int) to.getYaw();
+        boolean turned = headYaw != entity.getHeadYaw();
+        entity.setHeadYaw(headYaw);
+        WrapperPlayServerRelEntityMoveLook move = null;
+        WrapperPlayServerEntityTeleport teleport = null;
+        WrapperPlayServerEntityHeadRotation head = null;
+        Set<CPlayer> synced = new HashSet<>();
+        int sent = 0;
+        for (CPlayer player : entity.viewers) {
+            if (sent >= budget) break;
+            boolean near = isNear(player, to);
+            if (!near && !farTick) continue;
+            if (near && fine && movement.synced.contains(player)) {
+                if (move == null) move = moveLook(entity, from, to);
+                move.sendPacket(player);
+            } else {
+                if (teleport == null) teleport = teleport(entity, to);
+                teleport.sendPacket(player);
+            }
+            sent++;
+            synced.add(player);
+            // Far viewers can't make out where the head is pointing
+            if (near && (turned || !movement.synced.contains(player)) && sent < budget) {
+                if (head == null) head = headRotation(entity);
+                head.sendPacket(player);
+                sent++;
+            }
+        }
+        movement.synced = synced;
+        return sent;
+    }
+
+    private void finish(Movement movement, boolean reached) {
+        AbstractEntity entity = movement.entity;
+        if (entity.isSpawned()) {
+            // Every viewer is sent the final position regardless of the budget, so nobody is left where they were
+            // before missing an update, or off by the rounding of relative moves sent before this path
+            WrapperPlayServerEntityTeleport teleport = teleport(entity, entity.getLocation());
+            entity.viewers.forEach(teleport::sendPacket);
+        }
+        movement.future.complete(reached);
+    }
+
+    private boolean isNear(CPlayer player, Point point) {
+        Location location = player.getLocation();
+        if (location == null || !Objects.equals(location.getWorld(), point.getWorld())) return false;
+        double dx = location.getX() - point.getX(), dy = location.getY() - point.getY(), dz = location.getZ() - point.getZ();
+        return dx * dx + dy * dy + dz * dz <= detailDistanceSquared;
+    }
+
+    /**
+     * Create a relative move between two positions
+     * <p>
+     * Clients keep positions in 1/4096ths of a block, set from the floor of a teleport's position and added to by
+     * relative moves. The delta is taken between both positions in those units, so the client ends up exactly where
+     * it would after a teleport to the new position instead of drifting by a rounding error every tick.
+     */
+    private static WrapperPlayServerRelEntityMoveLook moveLook(AbstractEntity entity, Point from, Point to) {
+        WrapperPlayServerRelEntityMoveLook packet = new WrapperPlayServerRelEntityMoveLook();
+        packet.setEntityID(entity.getEntityId());
+        packet.setDx((encode(to.getX()) - encode(from.getX())) / 4096D);
+        packet.setDy((encode(to.getY()) - encode(from.getY())) / 4096D);
+        packet.setDz((encode(to.getZ()) - encode(from.getZ())) / 4096D);
+        packet.setYaw(to.getYaw());
+        packet.setPitch(to.getPitch());
+        packet.setOnGround(true);
+        return packet;
+    }
+
+    private static long encode(double coordinate) {
+        return (long) Math.floor(coordinate * 4096);
+    }
+
+    private static WrapperPlayServerEntityTeleport teleport(AbstractEntity entity, Point to) {
+        WrapperPlayServerEntityTeleport packet = new WrapperPlayServerEntityTeleport();
+        packet.setEntityID(entity.getEntityId());
+        packet.setX(to.getX());
+        packet.setY(to.getY());
+        packet.setZ(to.getZ());
+        packet.setYaw(to.getYaw());
+        packet.setPitch(to.getPitch());
+        return packet;
+    }
+
+    private static WrapperPlayServerEntityHeadRotation headRotation(AbstractEntity entity) {
+        WrapperPlayServerEntityHeadRotation packet = new WrapperPlayServerEntityHeadRotation();
+        packet.setEntityID(entity.getEntityId());
+        packet.setHeadYaw(entity.getHeadYaw());
+        return packet;
+    }
+
+    private static class Movement {
+        private final AbstractEntity entity;
+        private final List<Point> path;
+        // Blocks moved per tick
+        private final double step;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        private int next = 0;
+        // Viewers whose client has the entity where it was after the last tick
+        private Set<CPlayer> synced;
+
+        private Movement(AbstractEntity entity, List<Point> path, double step) {
+            this.entity = entity;
+            this.path = path;
+            this.step = step;
+            this.synced = new HashSet<>(entity.viewers);
+        }
+
+        private boolean isDone() {
+            return next >= path.size();
+        }
+
+        /**
+         * Move one tick further along the path
+         *
+         * @param from where the entity is
+         * @return where the entity is after this tick
+         */
+        private Point advance(Point from) {
+            double remaining = step;
+            double x = from.getX(), y = from.getY(), z = from.getZ();
+            float yaw = from.getYaw(), pitch = from.getPitch();
+            while (next < path.size()) {
+                Point target = path.get(next);
+                if (!Objects.equals(target.getWorld(), from.getWorld())) {
+                    // Points in another world are teleported to
+                    next++;
+                    return Point.of(target.getX(), target.getY(), target.getZ(), target.getWorld()).setYaw(yaw).setPitch(pitch);
+                }
+                double dx = target.getX() - x, dy = target.getY() - y, dz = target.getZ() - z;
+                double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                if (dx != 0 || dz != 0) {
+                    yaw = (float) Math.toDegrees(Math.atan2(-dx, dz));
+                    pitch = 0;
+                }
+                if (distance > remaining) {
+                    double fraction = remaining / distance;
+                    x += dx * fraction;
+                    y += dy * fraction;
+                    z += dz * fraction;
+                    break;
+                }
+                x = target.getX();
+                y = target.getY();
+                z = target.getZ();
+                remaining -= distance;
+                next++;
+            }
+            return Point.of(x, y, z, from.getWorld()).setYaw(yaw).setPitch(pitch);
+        }
+    }
+}
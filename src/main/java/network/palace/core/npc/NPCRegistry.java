@@ -0,0 +1,150 @@
+package network.palace.core.npc;
+
+import lombok.Getter;
+import network.palace.core.Core;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+
+/**
+ * Keeps track of every spawned entity, grouped by world and by the plugin that created it
+ * <p>
+ * Entities are added when they spawn and removed when they despawn. When a plugin disables, any entities it left
+ * spawned are reported as leaks and despawned.
+ */
+public final class NPCRegistry implements Listener {
+    private final Set<AbstractEntity> spawned = new LinkedHashSet<>();
+    private final Map<World, Set<AbstractEntity>> byWorld = new HashMap<>();
+    private final Map<String, Set<AbstractEntity>> byPlugin = new HashMap<>();
+    @Getter private final List<Leak> leaks = new ArrayList<>();
+
+    NPCRegistry() {
+        Core.registerListener(this);
+    }
+
+    void register(AbstractEntity entity) {
+        if (!spawned.add(entity)) return;
+        byWorld.computeIfAbsent(entity.getLocation().getWorld(), w -> new LinkedHashSet<>()).add(entity);
+        byPlugin.computeIfAbsent(entity.getOwner().getName(), p -> new LinkedHashSet<>()).add(entity);
+    }
+
+    void unregister(AbstractEntity entity) {
+        if (!spawned.remove(entity)) return;
+        removeFrom(byWorld, entity.getLocation().getWorld(), entity);
+        removeFrom(byPlugin, entity.getOwner().getName(), entity);
+    }
+
+    /**
+     * Move an entity to the group for its current world
+     *
+     * @param entity   the entity
+     * @param previous the world it was in before
+     */
+    void changedWorld(AbstractEntity entity, World previous) {
+        if (!spawned.contains(entity)) return;
+        removeFrom(byWorld, previous, entity);
+        byWorld.computeIfAbsent(entity.getLocation().getWorld(), w -> new LinkedHashSet<>()).add(entity);
+    }
+
+    /**
+     * Get every spawned entity
+     *
+     * @return the entities, which must not be modified
+     */
+    public Collection<AbstractEntity> getSpawned() {
+        return Collections.unmodifiableSet(spawned);
+    }
+
+    /**
+     * Get the spawned entities in a world
+     *
+     * @param world the world, or null for entities without a world
+     * @return the entities, which must not be modified
+     */
+    public Collection<AbstractEntity> getSpawned(World world) {
+        return Collections.unmodifiableSet(byWorld.getOrDefault(world, Collections.emptySet()));
+    }
+
+    /**
+     * Get the spawned entities created by a plugin
+     *
+     * @param plugin the plugin
+     * @return the entities, which must not be modified
+     */
+    public Collection<AbstractEntity> getSpawned(Plugin plugin) {
+        return Collections.unmodifiableSet(byPlugin.getOrDefault(plugin.getName(), Collections.emptySet()));
+    }
+
+    /**
+     * Get the number of spawned entities created by each plugin
+     *
+     * @return plugin names mapped to their entity counts
+     */
+    public Map<String, Integer> getCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        byPlugin.forEach((plugin, entities) -> counts.put(plugin, entities.size()));
+        return counts;
+    }
+
+    /**
+     * Despawn every entity created by a plugin
+     *
+     * @param plugin the plugin
+     * @return the number of entities despawned
+     */
+    public int despawnAll(Plugin plugin) {
+        List<AbstractEntity> entities = new ArrayList<>(getSpawned(plugin));
+        for (AbstractEntity entity : entities) {
+            try {
+                entity.despawn();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return entities.size();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        Plugin plugin = event.getPlugin();
+        if (plugin.equals(Core.getInstance())) return;
+        Collection<AbstractEntity> entities = getSpawned(plugin);
+        if (entities.isEmpty()) return;
+        Map<String, Integer> types = new TreeMap<>();
+        for (AbstractEntity entity : entities) {
+            types.merge(entity.getEntityType().name(), 1, Integer::sum);
+        }
+        Leak leak = new Leak(plugin.getName(), entities.size(), types, System.currentTimeMillis());
+        leaks.add(leak);
+        Core.logMessage("NPCRegistry", plugin.getName() + " was disabled with " + leak.getCount() + " entities still spawned " + types + ", despawning them");
+        despawnAll(plugin);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<AbstractEntity>> groups, K key, AbstractEntity entity) {
+        Set<AbstractEntity> group = groups.get(key);
+        if (group != null && group.remove(entity) && group.isEmpty()) groups.remove(key);
+    }
+
+    /**
+     * Entities a plugin left spawned when it was disabled
+     */
+    @Getter
+    public static class Leak {
+        private final String plugin;
+        private final int count;
+        private final Map<String, Integer> types;
+        private final long time;
+
+        private Leak(String plugin, int count, Map<String, Integer> types, long time) {
+            this.plugin = plugin;
+            this.count = count;
+            this.types = types;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package network.palace.core.npc;
+
+import network.palace.core.pathfinding.Point;
+
+import java.util.*;
+
+/**
+ * Groups spawned entities by world and by 16x16 column of blocks, so visibility checks only need to look at the
+ * entities near a player
+ * <p>
+ * The cells an entity is added to, removed from or moves between are recorded until they're collected with
+ * {@link #drainChanges()}, so callers can tell which previous lookups are out of date.
+ */
+final class NPCSpatialIndex {
+    static final int CELL_SHIFT = 4;
+    static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    private final Map<UUID, Map<Long, Set<AbstractEntity>>> cells = new HashMap<>();
+    private final Map<AbstractEntity, Entry> entries = new HashMap<>();
+    // World -> the keys of the cells whose entities changed since the last drain
+    private Map<UUID, Set<Long>> changes = new HashMap<>();
+
+    /**
+     * Add an entity, or move it to the cell for its current location
+     *
+     * @param entity the entity
+     */
+    void update(AbstractEntity entity) {
+        Point location = entity.getLocation();
+        if (!entity.isSpawned() || location.getWorld() == null) {
+            remove(entity);
+            return;
+        }
+        UUID world = location.getWorld().getUID();
+        long cell = key(cell(location.getX()), cell(location.getZ()));
+        Entry entry = entries.get(entity);
+        if (entry != null) {
+            if (entry.world.equals(world) && entry.cell == cell) return;
+            removeFromCell(entity, entry);
+        }
+        entries.put(entity, new Entry(world, cell));
+        cells.computeIfAbsent(world, w -> new HashMap<>()).computeIfAbsent(cell, c -> new HashSet<>()).add(entity);
+        changed(world, cell);
+    }
+
+    /**
+     * Remove an entity
+     *
+     * @param entity the entity
+     */
+    void remove(AbstractEntity entity) {
+        Entry entry = entries.remove(entity);
+        if (entry != null) removeFromCell(entity, entry);
+    }
+
+    /**
+     * Add every entity within a square of cells to a collection
+     *
+     * @param world  the world
+     * @param cellX  the x coordinate of the center cell
+     * @param cellZ  the z coordinate of the center cell
+     * @param radius the number of cells to include on each side of the center cell
+     * @param into   the collection to add the entities to
+     */
+    void collect(UUID world, int cellX, int cellZ, int radius, Collection<AbstractEntity> into) {
+        Map<Long, Set<AbstractEntity>> worldCells = cells.get(world);
+        if (worldCells == null) return;
+        for (int x = cellX - radius; x <= cellX + radius; x++) {
+            for (int z = cellZ - radius; z <= cellZ + radius; z++) {
+                Set<AbstractEntity> entities = worldCells.get(key(x, z));
+                if (entities != null) into.addAll(entities);
+            }
+        }
+    }
+
+    /**
+     * Get the cells whose entities changed since the last call, and start recording again
+     *
+     * @return the keys of the changed cells by world
+     */
+    Map<UUID, Set<Long>> drainChanges() {
+        if (changes.isEmpty()) return Collections.emptyMap();
+        Map<UUID, Set<Long>> drained = changes;
+        changes = new HashMap<>();
+        return drained;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void removeFromCell(AbstractEntity entity, Entry entry) {
+        Map<Long, Set<AbstractEntity>> worldCells = cells.get(entry.world);
+        if (worldCells != null) {
+            Set<AbstractEntity> entities = worldCells.get(entry.cell);
+            if (entities != null && entities.remove(entity) && entities.isEmpty()) worldCells.remove(entry.cell);
+            if (worldCells.isEmpty()) cells.remove(entry.world);
+        }
+        changed(entry.world, entry.cell);
+    }
+
+    private void changed(UUID world, long cell) {
+        changes.computeIfAbsent(world, w -> new HashSet<>()).add(cell);
+    }
+
+    static int cell(double coordinate) {
+        return ((int) Math.floor(coordinate)) >> CELL_SHIFT;
+    }
+
+    static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    static int cellX(long key) {
+        return (int) (key >> 32);
+    }
+
+    static int cellZ(long key) {
+        return (int) key;
+    }
+
+    private static class Entry {
+        private final UUID world;
+        private final long cell;
+
+        private Entry(UUID world, long cell) {
+            this.world = world;
+            this.cell = cell;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package network.palace.core.npc;
+
+import lombok.Getter;
+import network.palace.core.Core;
+import network.palace.core.npc.mob.MobPlayer;
+import network.palace.core.packets.server.entity.WrapperPlayServerEntityDestroy;
+import network.palace.core.player.CPlayer;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+
+import java.util.*;
+
+/**
+ * Decides which entities each player can see, once every few ticks, like the vanilla entity tracker
+ * <p>
+ * Every run looks at where each tracked player is, works out which entities entered and left their view since the
+ * last run, then spawns the new ones and destroys the old ones with a single packet per player.
+ */
+public final class NPCTracker {
+    private static final int SAMPLES = 100;
+
+    private final SoftNPCManager manager;
+    private final Map<UUID, ViewState> views = new HashMap<>();
+    // Players with an entity added, removed or moved between cells near them since their last update
+    private final Set<UUID> outdated = new HashSet<>();
+    @Getter private final int interval;
+
+    private final long[] samples = new long[SAMPLES];
+    private int sampleCount = 0;
+    @Getter private long lastTime = 0;
+    @Getter private int lastSpawned = 0;
+    @Getter private int lastDestroyed = 0;
+
+    NPCTracker(SoftNPCManager manager) {
+        this.manager = manager;
+        this.interval = Math.max(1, Core.getCoreConfig().getInt("npc.tracker-interval", 1));
+        Core.runTaskTimer(Core.getInstance(), this::tick, interval, interval);
+    }
+
+    /**
+     * Start tracking a player, they'll be shown the entities around them on the next run
+     *
+     * @param player the player
+     */
+    void addPlayer(CPlayer player) {
+        views.put(player.getUniqueId(), new ViewState(null, 0, 0, 0, 0, Collections.emptyList()));
+    }
+
+    /**
+     * Stop tracking a player
+     *
+     * @param player the player
+     */
+    void removePlayer(CPlayer player) {
+        views.remove(player.getUniqueId());
+        outdated.remove(player.getUniqueId());
+    }
+
+    /**
+     * Check every entity around a player again on the next run, for example after they respawn or change worlds
+     *
+     * @param player the player
+     */
+    void invalidate(CPlayer player) {
+        ViewState view = views.get(player.getUniqueId());
+        if (view == null) return;
+        views.put(player.getUniqueId(), new ViewState(null, 0, 0, view.yaw, view.pitch, view.nearby));
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        int spawned = 0, destroyed = 0;
+        markOutdated(manager.getSpatialIndex().drainChanges());
+        for (CPlayer player : Core.getPlayerManager().getOnlinePlayerSnapshot()) {
+            ViewState view = views.get(player.getUniqueId());
+            Player bukkitPlayer = player.getBukkitPlayer();
+            if (view == null || bukkitPlayer == null) continue;
+            try {
+                Location loc = bukkitPlayer.getLocation();
+                loc.setYaw(loc.getYaw() % 360);
+                ViewState next = view;
+                boolean changed = outdated.remove(player.getUniqueId());
+                if (changed || view.isOutdated(loc)) {
+                    List<AbstractEntity> entered = new ArrayList<>();
+                    List<AbstractEntity> left = new ArrayList<>();
+                    next = update(player, loc, view, entered, left);
+                    for (AbstractEntity entity : entered) {
+                        entity.forceSpawn(player);
+                    }
+                    int[] ids = new int[left.size()];
+                    int i = 0;
+                    for (AbstractEntity entity : left) {
+                        if (entity.untrack(player)) ids[i++] = entity.getEntityId();
+                    }
+                    if (i > 0) {
+                        WrapperPlayServerEntityDestroy packet = new WrapperPlayServerEntityDestroy();
+                        packet.setEntityIds(i == ids.length ? ids : Arrays.copyOf(ids, i));
+                        packet.sendPacket(player);
+                    }
+                    spawned += entered.size();
+                    destroyed += i;
+                } else if (view.yaw != loc.getYaw() || view.pitch != loc.getPitch()) {
+                    next = view.withRotation(loc.getYaw(), loc.getPitch());
+                }
+                if (next.yaw != view.yaw || next.pitch != view.pitch) updateTabList(player, loc, next);
+                views.put(player.getUniqueId(), next);
+            } catch (Exception e) {
+                Core.logMessage("NPCTracker", "Error tracking entities for " + player.getName() + ": " + e.getMessage());
+            }
+        }
+        lastTime = System.nanoTime() - start;
+        lastSpawned = spawned;
+        lastDestroyed = destroyed;
+        samples[sampleCount++ % SAMPLES] = lastTime;
+    }
+
+    /**
+     * Mark the players whose surrounding cells contain a changed cell, so only they are checked again
+     */
+    private void markOutdated(Map<UUID, Set<Long>> changes) {
+        if (changes.isEmpty()) return;
+        for (Map.Entry<UUID, ViewState> e : views.entrySet()) {
+            ViewState view = e.getValue();
+            if (view.world == null) continue;
+            Set<Long> cells = changes.get(view.world);
+            if (cells == null) continue;
+            for (long cell : cells) {
+                if (Math.abs(NPCSpatialIndex.cellX(cell) - view.cellX) <= SoftNPCManager.CELL_RADIUS
+                        && Math.abs(NPCSpatialIndex.cellZ(cell) - view.cellZ) <= SoftNPCManager.CELL_RADIUS) {
+                    outdated.add(e.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Work out which entities entered and left a player's view
+     * <p>
+     * Only entities in the cells around the player, and the ones that were in range at the last run, are considered.
+     */
+    private ViewState update(CPlayer player, Location loc, ViewState previous, List<AbstractEntity> entered, List<AbstractEntity> left) {
+        World world = loc.getWorld();
+        int cellX = NPCSpatialIndex.cell(loc.getX());
+        int cellZ = NPCSpatialIndex.cell(loc.getZ());
+        Set<AbstractEntity> candidates = new HashSet<>(previous.nearby);
+        manager.getSpatialIndex().collect(world.getUID(), cellX, cellZ, SoftNPCManager.CELL_RADIUS, candidates);
+        List<AbstractEntity> nearby = new ArrayList<>();
+        for (AbstractEntity entity : candidates) {
+            boolean viewer = entity.isViewer(player);
+            if (!entity.isSpawned() || !entity.canSee(player) || !world.equals(entity.getLocation().getWorld())) {
+                // Despawned entities have already been destroyed for their viewers
+                if (viewer && entity.isSpawned()) left.add(entity);
+                continue;
+            }
+            Location location = entity.getLocation().getLocation();
+            if (loc.distanceSquared(location) <= SoftNPCManager.RENDER_DISTANCE * SoftNPCManager.RENDER_DISTANCE) {
+                if (!viewer) entered.add(entity);
+                nearby.add(entity);
+            } else if (viewer) {
+                left.add(entity);
+            }
+        }
+        return new ViewState(world.getUID(), cellX, cellZ, loc.getYaw(), loc.getPitch(), nearby);
+    }
+
+    /**
+     * Remove player entities the player is looking at from their tab list
+     */
+    private void updateTabList(CPlayer player, Location loc, ViewState view) {
+        for (AbstractEntity npcMob : view.nearby) {
+            if (!npcMob.getEntityType().equals(EntityType.PLAYER) || !npcMob.isSpawned() || !npcMob.isViewer(player))
+                continue;
+            MobPlayer mobPlayer = (MobPlayer) npcMob;
+
+            if (!mobPlayer.needsRemoveFromTabList(player)) continue;
+
+            Vector mobLoc = mobPlayer.getLocation().getLocation().toVector();
+
+            Location copy = loc.clone();
+            copy.setDirection(mobLoc.subtract(copy.toVector()));
+            float yaw = copy.getYaw();
+            float playerYaw = loc.getYaw();
+            if (yaw < 0) yaw += 360;
+            if (playerYaw < 0) playerYaw += 360;
+            float difference = Math.abs(playerYaw - yaw);
+            if (difference <= 60) {
+                manager.removeFromTabList(player, mobPlayer);
+            }
+        }
+    }
+
+    /**
+     * Get the average time a run took, over the last 100 runs
+     *
+     * @return the average time in nanoseconds
+     */
+    public long getAverageTime() {
+        int count = Math.min(sampleCount, SAMPLES);
+        if (count == 0) return 0;
+        long total = 0;
+        for (int i = 0; i < count; i++) total += samples[i];
+        return total / count;
+    }
+
+    /**
+     * Get the longest time a run took, over the last 100 runs
+     *
+     * @return the longest time in nanoseconds
+     */
+    public long getMaxTime() {
+        int count = Math.min(sampleCount, SAMPLES);
+        long max = 0;
+        for (int i = 0; i < count; i++) max = Math.max(max, samples[i]);
+        return max;
+    }
+
+    public int getTrackedPlayers() {
+        return views.size();
+    }
+
+    /**
+     * Where a player was at the last run, and the entities that were in range
+     */
+    private static class ViewState {
+        private final UUID world;
+        private final int cellX, cellZ;
+        private final float yaw, pitch;
+        private final List<AbstractEntity> nearby;
+
+        private ViewState(UUID world, int cellX, int cellZ, float yaw, float pitch, List<AbstractEntity> nearby) {
+            this.world = world;
+            this.cellX = cellX;
+            this.cellZ = cellZ;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.nearby = nearby;
+        }
+
+        private ViewState withRotation(float yaw, float pitch) {
+            return new ViewState(world, cellX, cellZ, yaw, pitch, nearby);
+        }
+
+        private boolean isOutdated(Location loc) {
+            if (world == null) return true;
+            return !world.equals(loc.getWorld().getUID()) || cellX != NPCSpatialIndex.cell(loc.getX()) || cellZ != NPCSpatialIndex.cell(loc.getZ());
+        }
+    }
+}
@@ -1,38 +1,48 @@
 package network.palace.core.npc;
 
+import com.comphenix.protocol.ProtocolLibrary;
 import com.comphenix.protocol.wrappers.EnumWrappers;
 import com.comphenix.protocol.wrappers.PlayerInfoData;
 import com.comphenix.protocol.wrappers.WrappedGameProfile;
+import lombok.AccessLevel;
 import lombok.Getter;
 import network.palace.core.Core;
 import network.palace.core.events.CorePlayerJoinedEvent;
 import network.palace.core.npc.mob.MobPlayer;
 import network.palace.core.packets.server.entity.WrapperPlayServerPlayerInfo;
 import network.palace.core.packets.server.scoreboard.WrapperPlayServerScoreboardTeam;
+import network.palace.core.pathfinding.Point;
 import network.palace.core.player.CPlayer;
 import network.palace.core.utils.MiscUtil;
 import org.bukkit.Location;
-import org.bukkit.entity.EntityType;
+import org.bukkit.World;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.*;
-import org.bukkit.util.Vector;
 
-import java.lang.ref.WeakReference;
 import java.util.*;
 
 public final class SoftNPCManager implements Listener {
     private static final String HIDDEN_TEAM = "hidden_players";
-    private static final int RENDER_DISTANCE = 60;
+    static final int RENDER_DISTANCE = 60;
     private static final int TELEPORT_MIN_DISTANCE = 15;
+    // Number of cells on each side of a player that can hold an entity within render distance
+    static final int CELL_RADIUS = (RENDER_DISTANCE + NPCSpatialIndex.CELL_SIZE - 1) / NPCSpatialIndex.CELL_SIZE;
     @Getter private IDManager iDManager;
-    @Getter private final Set<WeakReference<AbstractEntity>> entityRefs = new HashSet<>();
+    @Getter private final NPCRegistry registry = new NPCRegistry();
+    @Getter(AccessLevel.PACKAGE) private final NPCSpatialIndex spatialIndex = new NPCSpatialIndex();
+    @Getter private final NPCTracker tracker;
+    @Getter private final NPCMovementEngine movementEngine;
+    @Getter(AccessLevel.PACKAGE) private final NPCInteractionDispatcher interactionDispatcher = new NPCInteractionDispatcher();
     private List<String> hiddenPlayerMobs = new ArrayList<>();
     private HashMap<UUID, List<MobPlayer>> removeFromTabList = new HashMap<>();
 
     public SoftNPCManager() {
         iDManager = new IDManager();
+        tracker = new NPCTracker(this);
+        movementEngine = new NPCMovementEngine();
+        ProtocolLibrary.getProtocolManager().addPacketListener(interactionDispatcher);
         Core.registerListener(this);
         Core.runTaskTimer(Core.getInstance(), () -> {
             HashMap<UUID, List<MobPlayer>> localMap = (HashMap<UUID, List<MobPlayer>>) removeFromTabList.clone();
@@ -58,38 +68,8 @@ public final class SoftNPCManager implements Listener {
         }, 20L, 10L);
     }
 
-    private void ensureAllValid() {
-        entityRefs.removeIf(mob -> mob.get() == null);
-    }
-
-    @EventHandler(priority = EventPriority.MONITOR)
-    public void onPlayerMove(PlayerMoveEvent event) {
-        CPlayer player = Core.getPlayerManager().getPlayer(event.getPlayer());
-        if (player == null) return;
-        Location from = event.getFrom().clone();
-        Location to = event.getTo().clone();
-        to.setYaw(to.getYaw() % 360);
-        updatePosition(player, from, to);
-    }
-
-    @EventHandler(priority = EventPriority.MONITOR)
-    public void onPlayerTeleport(PlayerTeleportEvent event) {
-        CPlayer player = Core.getPlayerManager().getPlayer(event.getPlayer());
-        if (player == null) return;
-        Location from = event.getFrom().clone();
-        Location to = event.getTo().clone();
-        updatePosition(player, from, to);
-    }
-
-    private void updatePosition(CPlayer player, Location from, Location to) {
-        boolean changedView = from.getYaw() != to.getYaw() || from.getPitch() != to.getPitch();
-        boolean changedPosition = from.getBlockX() != to.getBlockX() || from.getBlockY() != to.getBlockY() || from.getBlockZ() != to.getBlockZ();
-        updateMobs(player, to, changedPosition, changedView);
-    }
-
     @EventHandler
     public void onPlayerJoin(CorePlayerJoinedEvent event) {
-        ensureAllValid();
         CPlayer player = event.getPlayer();
         //Create team for hidden players
         WrapperPlayServerScoreboardTeam wrapper = new WrapperPlayServerScoreboardTeam();
@@ -98,88 +78,61 @@ public final class SoftNPCManager implements Listener {
         wrapper.setNameTagVisibility("never");
         wrapper.setPlayers(hiddenPlayerMobs);
         wrapper.sendPacket(player);
-        updateMobs(player, null, true, false);
+        tracker.addPlayer(player);
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
-        ensureAllValid();
         playerLogout(Core.getPlayerManager().getPlayer(event.getPlayer()));
     }
 
     @EventHandler
     public void onPlayerKick(PlayerKickEvent event) {
-        ensureAllValid();
         playerLogout(Core.getPlayerManager().getPlayer(event.getPlayer()));
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerRespawn(PlayerRespawnEvent event) {
-        ensureAllValid();
-        updateMobs(Core.getPlayerManager().getPlayer(event.getPlayer()), null, true, false);
+        CPlayer player = Core.getPlayerManager().getPlayer(event.getPlayer());
+        if (player == null) return;
+        tracker.invalidate(player);
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerWorldChange(PlayerChangedWorldEvent event) {
-        ensureAllValid();
         CPlayer player = Core.getPlayerManager().getPlayer(event.getPlayer());
-        for (WeakReference<AbstractEntity> mobRef : entityRefs) {
-            AbstractEntity mobNPC = mobRef.get();
-            if (mobNPC == null || mobNPC.getVisibleTo().size() != 0 && MiscUtil.contains(mobNPC.getTargets(), event.getPlayer()))
+        if (player != null) tracker.invalidate(player);
+        // Entities in worlds are handled by the tracker, this only covers the ones without a world
+        for (AbstractEntity mobNPC : new ArrayList<>(registry.getSpawned((World) null))) {
+            if (mobNPC.getVisibleTo().size() != 0 && MiscUtil.contains(mobNPC.getTargets(), event.getPlayer()))
                 continue;
-            if (mobNPC.getLocation().getWorld() == null) {
-                if (event.getPlayer().getWorld().equals(mobNPC.getLocation().getWorld())) {
-                    mobNPC.forceSpawn(player);
-                } else {
-                    mobNPC.forceDespawn(player);
-                }
-            }
+            mobNPC.forceDespawn(player);
         }
     }
 
-    private void updateMobs(CPlayer player, Location loc, boolean spawn, boolean tabList) {
-        if (loc == null) {
-            loc = player.getLocation();
-        }
-        for (WeakReference<AbstractEntity> mobRef : entityRefs) {
-            final AbstractEntity npcMob = mobRef.get();
-            if (npcMob == null) continue;
-            if (npcMob.isSpawned() && npcMob.canSee(player) && npcMob.sameWorld(player)) {
-                if (spawn) {
-                    boolean viewer = npcMob.isViewer(player);
-                    double distance = loc.distance(npcMob.getLocation().getLocation());
-                    if (distance <= RENDER_DISTANCE && !viewer) {
-                        npcMob.forceSpawn(player);
-                    } else if (distance > RENDER_DISTANCE && viewer) {
-                        npcMob.forceDespawn(player);
-                    }
-                }
-                if (!tabList || !npcMob.getEntityType().equals(EntityType.PLAYER) || !npcMob.isViewer(player))
-                    continue;
-                MobPlayer mobPlayer = (MobPlayer) npcMob;
-
-                if (!mobPlayer.needsRemoveFromTabList(player)) continue;
-
-                Vector mobLoc = mobPlayer.getLocation().getLocation().toVector();
-
-                Location copy = loc.clone();
-                copy.setDirection(mobLoc.subtract(copy.toVector()));
-                float yaw = copy.getYaw();
-                float playerYaw = loc.getYaw();
-                if (yaw < 0) yaw += 360;
-                if (playerYaw < 0) playerYaw += 360;
-                float difference = Math.abs(playerYaw - yaw);
-                if (difference <= 60) {
-                    removeFromTabList(player, mobPlayer);
-                }
-            }
-        }
+    /**
+     * Check whether an entity is close enough to a player to be shown to them
+     *
+     * @param player the player
+     * @param entity the entity
+     * @return true if the entity is within render distance in the player's world, or has no world
+     */
+    boolean isInRange(CPlayer player, AbstractEntity entity) {
+        Location loc = player.getLocation();
+        Point location = entity.getLocation();
+        // Entities without a world are shown in every world
+        if (location.getWorld() == null) return true;
+        if (!location.getWorld().equals(loc.getWorld())) return false;
+        double dx = loc.getX() - location.getX(), dy = loc.getY() - location.getY(), dz = loc.getZ() - location.getZ();
+        return dx * dx + dy * dy + dz * dz <= RENDER_DISTANCE * RENDER_DISTANCE;
     }
 
     private void playerLogout(CPlayer player) {
-        for (WeakReference<AbstractEntity> mobRef : entityRefs) {
-            final AbstractEntity npcMob = mobRef.get();
-            if (npcMob != null && npcMob.isSpawned() && npcMob.isViewer(player)) {
+        if (player == null) return;
+        tracker.removePlayer(player);
+        for (AbstractEntity npcMob : registry.getSpawned()) {
+            npcMob.forgetClicks(player);
+            if (npcMob.isViewer(player)) {
                 npcMob.removeViewer(player);
             }
         }
@@ -233,7 +233,8 @@ public class MobPlayer extends AbstractGearMob {
             }
         } else {
             setMainHand(new ItemStack(Material.FISHING_ROD));
-            this.bobberEntityId = Core.getSoftNPCManager().getIDManager().getNextID();
+            // The id is kept for the mob's lifetime, a new one per cast would hold another reference until it's collected
+            if (bobberEntityId == 0) bobberEntityId = Core.getSoftNPCManager().getIDManager().getNextID(this);
             WrapperPlayServerSpawnEntity bobberPacket = getFishingPacket();
             viewers.forEach(bobberPacket::sendPacket);
         }
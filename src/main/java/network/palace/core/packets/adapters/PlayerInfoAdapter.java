@@ -29,7 +29,7 @@ public class PlayerInfoAdapter extends PacketAdapter {
         for (Object infoDataObj : playerInfo) {
             if (infoDataObj instanceof PlayerInfoData) {
                 PlayerInfoData infoData = (PlayerInfoData) infoDataObj;
-                CPlayer player = Core.getPlayerManager().getPlayer(infoData.getProfile().getName());
+                CPlayer player = Core.getPlayerManager().getPlayer(infoData.getProfile().getUUID());
                 if (player == null) return;
 //                player.setPing(infoData.getLatency());
             }
@@ -3,8 +3,9 @@ package network.palace.core.packets.server.scoreboard;
 import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.events.PacketContainer;
 import com.comphenix.protocol.reflect.IntEnum;
-import com.comphenix.protocol.utility.MinecraftReflection;
 import com.comphenix.protocol.wrappers.WrappedChatComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.chat.ComponentSerializer;
 import network.palace.core.packets.AbstractPacket;
 import org.bukkit.ChatColor;
 
@@ -70,17 +71,28 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      *
      * @return The current Team Display Name
      */
-    public WrappedChatComponent getDisplayName() {
-        return handle.getChatComponents().read(0);
+    public String getDisplayName() {
+        return handle.getStrings().read(1);
+    }
+
+    /**
+     * Set Team Display Name.
+     *
+     * @param value - new value.
+     */
+    public void setDisplayName(String value) {
+        handle.getStrings().write(1, value);
     }
 
     /**
      * Set Team Display Name.
      *
      * @param value - new value.
+     * @deprecated 1.12 sends the display name as legacy text, use {@link #setDisplayName(String)}
      */
+    @Deprecated
     public void setDisplayName(WrappedChatComponent value) {
-        handle.getChatComponents().write(0, value);
+        setDisplayName(toLegacyText(value));
     }
 
     /**
@@ -91,17 +103,28 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      *
      * @return The current Team Prefix
      */
-    public WrappedChatComponent getPrefix() {
-        return handle.getChatComponents().read(1);
+    public String getPrefix() {
+        return handle.getStrings().read(2);
+    }
+
+    /**
+     * Set Team Prefix.
+     *
+     * @param value - new value.
+     */
+    public void setPrefix(String value) {
+        handle.getStrings().write(2, value);
     }
 
     /**
      * Set Team Prefix.
      *
      * @param value - new value.
+     * @deprecated 1.12 sends the prefix as legacy text, use {@link #setPrefix(String)}
      */
+    @Deprecated
     public void setPrefix(WrappedChatComponent value) {
-        handle.getChatComponents().write(1, value);
+        setPrefix(toLegacyText(value));
     }
 
     /**
@@ -112,8 +135,8 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      *
      * @return The current Team Suffix
      */
-    public WrappedChatComponent getSuffix() {
-        return handle.getChatComponents().read(2);
+    public String getSuffix() {
+        return handle.getStrings().read(3);
     }
 
     /**
@@ -121,8 +144,23 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      *
      * @param value - new value.
      */
+    public void setSuffix(String value) {
+        handle.getStrings().write(3, value);
+    }
+
+    /**
+     * Set Team Suffix.
+     *
+     * @param value - new value.
+     * @deprecated 1.12 sends the suffix as legacy text, use {@link #setSuffix(String)}
+     */
+    @Deprecated
     public void setSuffix(WrappedChatComponent value) {
-        handle.getChatComponents().write(2, value);
+        setSuffix(toLegacyText(value));
+    }
+
+    private static String toLegacyText(WrappedChatComponent value) {
+        return value == null ? "" : TextComponent.toLegacyText(ComponentSerializer.parse(value.getJson()));
     }
 
     /**
@@ -134,7 +172,7 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @return The current Name Tag Visibility
      */
     public String getNameTagVisibility() {
-        return handle.getStrings().read(1);
+        return handle.getStrings().read(4);
     }
 
     /**
@@ -143,18 +181,19 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @param value - new value.
      */
     public void setNameTagVisibility(String value) {
-        handle.getStrings().write(1, value);
+        handle.getStrings().write(4, value);
     }
 
     /**
      * Retrieve Color.
      * <p>
-     * Notes: only if Mode = 0 or 2. Same as Chat colors.
+     * Notes: only if Mode = 0 or 2. Same as Chat colors, sent as the color's index or -1 for none.
      *
      * @return The current Color
      */
     public ChatColor getColor() {
-        return handle.getEnumModifier(ChatColor.class, MinecraftReflection.getMinecraftClass("EnumChatFormat")).read(0);
+        int id = handle.getIntegers().read(0);
+        return id >= 0 && id < 16 ? ChatColor.values()[id] : ChatColor.RESET;
     }
 
     /**
@@ -163,7 +202,7 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @param value - new value.
      */
     public void setColor(ChatColor value) {
-        handle.getEnumModifier(ChatColor.class, MinecraftReflection.getMinecraftClass("EnumChatFormat")).write(0, value);
+        handle.getIntegers().write(0, value != null && value.isColor() ? value.ordinal() : -1);
     }
 
     /**
@@ -173,7 +212,7 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @return The current collision rule
      */
     public String getCollisionRule() {
-        return handle.getStrings().read(2);
+        return handle.getStrings().read(5);
     }
 
     /**
@@ -182,7 +221,7 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @param value - new value.
      */
     public void setCollisionRule(String value) {
-        handle.getStrings().write(2, value);
+        handle.getStrings().write(5, value);
     }
 
     /**
@@ -216,7 +255,7 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @return The current Mode
      */
     public int getMode() {
-        return handle.getIntegers().read(0);
+        return handle.getIntegers().read(1);
     }
 
     /**
@@ -225,7 +264,7 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @param value - new value.
      */
     public void setMode(int value) {
-        handle.getIntegers().write(0, value);
+        handle.getIntegers().write(1, value);
     }
 
     /**
@@ -246,7 +285,7 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @return The current pack option data
      */
     public int getPackOptionData() {
-        return handle.getIntegers().read(1);
+        return handle.getIntegers().read(2);
     }
 
     /**
@@ -256,6 +295,6 @@ public class WrapperPlayServerScoreboardTeam extends AbstractPacket {
      * @see #getPackOptionData()
      */
     public void setPackOptionData(int value) {
-        handle.getIntegers().write(1, value);
+        handle.getIntegers().write(2, value);
     }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package network.palace.core.pathfinding;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+/**
+ * Read access to the blocks a path is searched through
+ */
+public interface BlockAccess {
+
+    /**
+     * Get the type of a block
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the type of the block
+     */
+    Material getType(int x, int y, int z);
+
+    /**
+     * Get the data value of a block
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the data value of the block
+     */
+    byte getData(int x, int y, int z);
+
+    /**
+     * Check whether something can stand on a block
+     *
+     * @param x the x coordinate of the block being stood on
+     * @param y the y coordinate of the block being stood on
+     * @param z the z coordinate of the block being stood on
+     * @return true if the block can be stood on
+     * @see Walkability#canStand(BlockAccess, int, int, int)
+     */
+    default boolean canStand(int x, int y, int z) {
+        return Walkability.canStand(this, x, y, z);
+    }
+
+    /**
+     * Check whether something can walk through a block
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return true if the block can be walked through
+     * @see Walkability#canWalkThrough(BlockAccess, int, int, int)
+     */
+    default boolean canWalkThrough(int x, int y, int z) {
+        return Walkability.canWalkThrough(this, x, y, z);
+    }
+
+    /**
+     * Read blocks straight from a world
+     *
+     * @param world the world
+     * @return the block access
+     * @implNote This loads chunks and must only be used on the main thread
+     */
+    static BlockAccess of(World world) {
+        return new BlockAccess() {
+            @Override
+            public Material getType(int x, int y, int z) {
+                return world.getBlockAt(x, y, z).getType();
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public byte getData(int x, int y, int z) {
+                Block block = world.getBlockAt(x, y, z);
+                return block.getData();
+            }
+        };
+    }
+}
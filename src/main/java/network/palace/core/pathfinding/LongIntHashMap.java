@@ -0,0 +1,87 @@
+package network.palace.core.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from long keys to non-negative int values, without boxing
+ */
+final class LongIntHashMap {
+    private static final int EMPTY = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    LongIntHashMap(int capacity) {
+        int length = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        keys = new long[length];
+        values = new int[length];
+        Arrays.fill(values, EMPTY);
+        mask = length - 1;
+    }
+
+    /**
+     * Get the value for a key
+     *
+     * @param key the key
+     * @return the value, or -1 if there isn't one
+     */
+    int get(long key) {
+        int slot = slot(key);
+        while (values[slot] != EMPTY) {
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Set the value for a key
+     *
+     * @param key   the key
+     * @param value the value, which must not be negative
+     */
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) grow();
+        int slot = slot(key);
+        while (values[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(values, EMPTY);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, EMPTY);
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,147 @@
+package network.palace.core.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * The nodes of a path search, stored in flat arrays that are kept and reused by the next search on the same thread
+ * <p>
+ * Nodes are referred to by index. The open set is a binary heap of node indexes ordered by f score.
+ */
+final class NodePool {
+    private static final int OPEN_NONE = -1;
+    private static final int CLOSED = -2;
+
+    int size = 0;
+    int[] x, y, z, g, f, parent;
+    // Position of each node in the heap, or OPEN_NONE/CLOSED
+    private int[] heapIndex;
+    private int[] heap;
+    private int heapSize = 0;
+    private final LongIntHashMap index = new LongIntHashMap(1024);
+
+    NodePool() {
+        allocate(256);
+    }
+
+    void reset() {
+        size = 0;
+        heapSize = 0;
+        index.clear();
+    }
+
+    /**
+     * Get the node for a block
+     *
+     * @return the node index, or -1 if the block has no node
+     */
+    int get(int x, int y, int z) {
+        return index.get(pack(x, y, z));
+    }
+
+    /**
+     * Add a node for a block
+     *
+     * @return the new node's index
+     */
+    int add(int x, int y, int z) {
+        if (size == this.x.length) allocate(size * 2);
+        int node = size++;
+        this.x[node] = x;
+        this.y[node] = y;
+        this.z[node] = z;
+        this.parent[node] = -1;
+        this.heapIndex[node] = OPEN_NONE;
+        index.put(pack(x, y, z), node);
+        return node;
+    }
+
+    boolean isOpenEmpty() {
+        return heapSize == 0;
+    }
+
+    boolean isClosed(int node) {
+        return heapIndex[node] == CLOSED;
+    }
+
+    /**
+     * Add a node to the open set, or move it up after its f score was lowered
+     */
+    void open(int node) {
+        if (heapIndex[node] == OPEN_NONE) {
+            heap[heapSize] = node;
+            heapIndex[node] = heapSize;
+            heapSize++;
+        }
+        siftUp(heapIndex[node]);
+    }
+
+    /**
+     * Remove the open node with the lowest f score and close it
+     */
+    int close() {
+        int node = heap[0];
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        heapIndex[node] = CLOSED;
+        return node;
+    }
+
+    private void siftUp(int i) {
+        int node = heap[i];
+        while (i > 0) {
+            int parentIndex = (i - 1) >>> 1;
+            int other = heap[parentIndex];
+            if (!less(node, other)) break;
+            heap[i] = other;
+            heapIndex[other] = i;
+            i = parentIndex;
+        }
+        heap[i] = node;
+        heapIndex[node] = i;
+    }
+
+    private void siftDown(int i) {
+        int node = heap[i];
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < heapSize && less(heap[right], heap[child])) child = right;
+            if (!less(heap[child], node)) break;
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = node;
+        heapIndex[node] = i;
+    }
+
+    /**
+     * Lower f scores first, then the node further along on ties
+     */
+    private boolean less(int a, int b) {
+        return f[a] < f[b] || (f[a] == f[b] && g[a] > g[b]);
+    }
+
+    private void allocate(int capacity) {
+        x = x == null ? new int[capacity] : Arrays.copyOf(x, capacity);
+        y = y == null ? new int[capacity] : Arrays.copyOf(y, capacity);
+        z = z == null ? new int[capacity] : Arrays.copyOf(z, capacity);
+        g = g == null ? new int[capacity] : Arrays.copyOf(g, capacity);
+        f = f == null ? new int[capacity] : Arrays.copyOf(f, capacity);
+        parent = parent == null ? new int[capacity] : Arrays.copyOf(parent, capacity);
+        heapIndex = heapIndex == null ? new int[capacity] : Arrays.copyOf(heapIndex, capacity);
+        heap = heap == null ? new int[capacity] : Arrays.copyOf(heap, capacity);
+    }
+
+    /**
+     * Pack block coordinates into a long, 26 bits each for x and z and 12 bits for y
+     */
+    static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+}
@@ -1,144 +1,203 @@
 package network.palace.core.pathfinding;
 
 import lombok.Getter;
-import org.bukkit.block.Block;
-import org.bukkit.material.Door;
-import org.bukkit.material.Gate;
+import lombok.Setter;
 
 import java.util.*;
 
+/**
+ * Finds a walking path between two blocks with A*
+ * <p>
+ * Points are the blocks being walked on, with two blocks of space above them. From each block the search can move to
+ * any of the 8 blocks around it, or step one block up or down. Diagonal moves can't cut corners.
+ * <p>
+ * Searches are limited by the number of nodes they expand and the number of blocks they look at, so an unreachable
+ * destination gives up instead of searching the whole world.
+ */
 public class Pathfinder {
+    public static final int DEFAULT_MAX_ITERATIONS = 10000;
+    public static final int DEFAULT_MAX_NODES = 50000;
 
-    @Getter private final Map<Double, PathfindingTile> tiles = new HashMap<>();
+    private static final int STRAIGHT_COST = 10;
+    private static final int DIAGONAL_COST = 14;
+    private static final int STEP_COST = 5;
+    private static final int[] STEPS = {0, 1, -1};
 
-    private Point endPos;
+    // Each search thread keeps its node arrays for the next search
+    private static final ThreadLocal<NodePool> POOLS = ThreadLocal.withInitial(NodePool::new);
 
-    private PathfindingTile start;
-    private PathfindingTile end;
+    private final Point startPos;
+    private final Point endPos;
+    private final BlockAccess blocks;
 
+    @Getter @Setter private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    @Getter @Setter private int maxNodes = DEFAULT_MAX_NODES;
+
+    @Getter private Status status = Status.NOT_STARTED;
+    @Getter private int iterations = 0;
+
+    /**
+     * Create a pathfinder that reads blocks straight from the end point's world
+     *
+     * @param startPos the block to start on
+     * @param endPos   the block to end on
+     * @implNote Searches must run on the main thread
+     */
     public Pathfinder(Point startPos, Point endPos) {
+        this(startPos, endPos, BlockAccess.of(endPos.getWorld()));
+    }
+
+    /**
+     * Create a pathfinder
+     *
+     * @param startPos the block to start on
+     * @param endPos   the block to end on
+     * @param blocks   where to read blocks from
+     */
+    public Pathfinder(Point startPos, Point endPos, BlockAccess blocks) {
+        this.startPos = startPos;
         this.endPos = endPos;
-        this.start = tileFrom(startPos);
-        this.end = tileFrom(endPos);
+        this.blocks = blocks;
     }
 
+    /**
+     * Find a path
+     *
+     * @param range the maximum number of nodes to expand, or -1 for the default
+     * @return the path from start to end, or null if none was found
+     */
     public List<PathfindingTile> solvePath(int range) {
-        tiles.clear();
-        Set<PathfindingTile> closedSet = new LinkedHashSet<>();
-        Set<PathfindingTile> openSet = new LinkedHashSet<>();
-        closedSet.add(start);
-        PathfindingTile current = start;
-        while (!current.getPoint().equals(endPos)) {
-            List<PathfindingTile> tilesAdjacent = getTilesAdjacent(current);
-            tilesAdjacent.removeAll(closedSet);
-            openSet.addAll(tilesAdjacent);
-            if (tilesAdjacent.size() == 0 && closedSet.size() == 0) return null;
-            PathfindingTile chosen = null;
-            for (PathfindingTile pathTile : openSet) {
-                if (chosen == null) {
-                    chosen = pathTile;
-                    continue;
-                }
-                if (pathTile.getFScore() < chosen.getFScore()) chosen = pathTile;
-            }
-            if (chosen == null) return null;
-            current = chosen;
-            openSet.remove(current);
-            closedSet.add(current);
-            if (range != -1 && closedSet.size() == range) break;
+        if (range != -1) maxIterations = range;
+        NodePool pool = POOLS.get();
+        int end = search(pool);
+        if (end == -1) return null;
+        int[] nodes = chain(pool, end);
+        List<PathfindingTile> path = new ArrayList<>(nodes.length);
+        PathfindingTile parent = null;
+        for (int node : nodes) {
+            PathfindingTile tile = new PathfindingTile(point(pool, node), parent, pool.g[node], pool.f[node] - pool.g[node]);
+            path.add(tile);
+            parent = tile;
+        }
+        return path;
+    }
+
+    /**
+     * Find a path
+     *
+     * @return the blocks to walk on from start to end, or null if none was found
+     */
+    public List<Point> findPath() {
+        NodePool pool = POOLS.get();
+        int end = search(pool);
+        if (end == -1) return null;
+        int[] nodes = chain(pool, end);
+        List<Point> path = new ArrayList<>(nodes.length);
+        for (int node : nodes) {
+            path.add(point(pool, node));
         }
-        List<PathfindingTile> pathTiles = new ArrayList<>(closedSet);
-        Collections.reverse(pathTiles);
-        return pathTiles;
+        return path;
     }
 
-    private List<PathfindingTile> getTilesAdjacent(PathfindingTile tile) {
-        List<PathfindingTile> pathTiles = new ArrayList<>();
-        Point center = tile.getPoint();
-        double centerX = center.getX(), centerY = center.getY(), centerZ = center.getZ();
-        for (int x = -1; x < 1; x++) {
-            for (int y = -1; y < 1; y++) {
-                for (int z = -1; z < 1; z++) {
-                    if (x == 0 && y == 0 && z == 0) continue;
-                    Point current = Point.of(centerX + x, centerY + y, centerZ + z, endPos.getWorld());
-                    if (!canWalk(current)) continue;
-                    PathfindingTile pathTile = tileFrom(current, tile);
-                    pathTile.updateScores(start, end);
-                    pathTiles.add(pathTile);
+    /**
+     * Run the search
+     *
+     * @return the end node, or -1 if no path was found
+     */
+    private int search(NodePool pool) {
+        pool.reset();
+        iterations = 0;
+        int sx = floor(startPos.getX()), sy = floor(startPos.getY()), sz = floor(startPos.getZ());
+        int ex = floor(endPos.getX()), ey = floor(endPos.getY()), ez = floor(endPos.getZ());
+        if (!blocks.canStand(ex, ey, ez)) {
+            status = Status.NO_PATH;
+            return -1;
+        }
+        int start = pool.add(sx, sy, sz);
+        pool.g[start] = 0;
+        pool.f[start] = heuristic(sx, sy, sz, ex, ey, ez);
+        pool.open(start);
+        while (!pool.isOpenEmpty()) {
+            if (iterations >= maxIterations) {
+                status = Status.BUDGET_EXCEEDED;
+                return -1;
+            }
+            int current = pool.close();
+            iterations++;
+            int cx = pool.x[current], cy = pool.y[current], cz = pool.z[current];
+            if (cx == ex && cy == ey && cz == ez) {
+                status = Status.FOUND;
+                return current;
+            }
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (dx == 0 && dz == 0) continue;
+                    boolean diagonal = dx != 0 && dz != 0;
+                    for (int dy : STEPS) {
+                        int nx = cx + dx, ny = cy + dy, nz = cz + dz;
+                        if (!canMove(cx, cy, cz, nx, ny, nz, diagonal)) continue;
+                        int cost = pool.g[current] + (diagonal ? DIAGONAL_COST : STRAIGHT_COST) + (dy != 0 ? STEP_COST : 0);
+                        int neighbor = pool.get(nx, ny, nz);
+                        if (neighbor == -1) {
+                            if (pool.size >= maxNodes) {
+                                status = Status.BUDGET_EXCEEDED;
+                                return -1;
+                            }
+                            neighbor = pool.add(nx, ny, nz);
+                        } else if (pool.isClosed(neighbor) || cost >= pool.g[neighbor]) {
+                            continue;
+                        }
+                        pool.g[neighbor] = cost;
+                        pool.f[neighbor] = cost + heuristic(nx, ny, nz, ex, ey, ez);
+                        pool.parent[neighbor] = current;
+                        pool.open(neighbor);
+                    }
                 }
             }
         }
-        return pathTiles;
+        status = Status.NO_PATH;
+        return -1;
+    }
+
+    private boolean canMove(int cx, int cy, int cz, int nx, int ny, int nz, boolean diagonal) {
+        if (!blocks.canStand(nx, ny, nz)) return false;
+        // Stepping up needs head room above the current block, stepping down needs it above the new one
+        if (ny > cy && !blocks.canWalkThrough(cx, cy + 3, cz)) return false;
+        if (ny < cy && !blocks.canWalkThrough(nx, cy + 2, nz)) return false;
+        if (diagonal) {
+            int feet = Math.max(cy, ny) + 1;
+            return blocks.canWalkThrough(nx, feet, cz) && blocks.canWalkThrough(nx, feet + 1, cz)
+                    && blocks.canWalkThrough(cx, feet, nz) && blocks.canWalkThrough(cx, feet + 1, nz);
+        }
+        return true;
     }
 
-    private boolean canWalk(Point current) {
-        Block walkingOn = current.getLocation(endPos.getWorld()).getBlock();
-        if (!canWalkOn(walkingOn)) return false;
-        Block walkingThrough1 = walkingOn.getRelative(0, 1, 0), walkingThrough2 = walkingThrough1.getRelative(0, 1, 0);
-        return canWalkThrough(walkingThrough1) && canWalkThrough(walkingThrough2);
+    /**
+     * Octile distance on the horizontal plane plus the cost of the steps needed, which never overestimates
+     */
+    private static int heuristic(int x, int y, int z, int ex, int ey, int ez) {
+        int dx = Math.abs(x - ex), dz = Math.abs(z - ez);
+        int diagonal = Math.min(dx, dz), straight = Math.max(dx, dz) - diagonal;
+        return diagonal * DIAGONAL_COST + straight * STRAIGHT_COST + Math.abs(y - ey) * STEP_COST;
     }
 
-    private static boolean canWalkThrough(Block b) {
-        switch (b.getType()) {
-            case AIR:
-            case LAVA:
-            case WATER:
-            case PORTAL:
-                return true;
-            case IRON_DOOR:
-            case DARK_OAK_DOOR:
-            case ACACIA_DOOR:
-            case BIRCH_DOOR:
-            case JUNGLE_DOOR:
-            case WOODEN_DOOR:
-            case SPRUCE_DOOR:
-                Door door = (Door) b.getState();
-                return door.isOpen();
-            case ACACIA_FENCE_GATE:
-            case BIRCH_FENCE_GATE:
-            case DARK_OAK_FENCE_GATE:
-            case JUNGLE_FENCE_GATE:
-            case FENCE_GATE:
-            case SPRUCE_FENCE_GATE:
-                Gate gate = (Gate) b.getState();
-                return gate.isOpen();
-            default:
-                return false;
-        }
+    private static int[] chain(NodePool pool, int end) {
+        int length = 0;
+        for (int node = end; node != -1; node = pool.parent[node]) length++;
+        int[] nodes = new int[length];
+        for (int node = end; node != -1; node = pool.parent[node]) nodes[--length] = node;
+        return nodes;
     }
 
-    private boolean canWalkOn(Block b) {
-        if (canWalkThrough(b)) return false;
-
-        switch (b.getType()) {
-            case LADDER:
-            case WHEAT:
-            case LONG_GRASS:
-            case RAILS:
-            case ACTIVATOR_RAIL:
-            case DETECTOR_RAIL:
-            case POWERED_RAIL:
-            case CAULDRON:
-            case YELLOW_FLOWER:
-            case FLOWER_POT:
-            case RED_ROSE:
-            case CAKE_BLOCK:
-            case CARPET:
-                return false;
-            default:
-                return true;
-        }
+    private Point point(NodePool pool, int node) {
+        return Point.of(pool.x[node], pool.y[node], pool.z[node], endPos.getWorld());
     }
 
-    private PathfindingTile tileFrom(Point point, PathfindingTile parent) {
-        Double uidFor = PathfindingTile.getUid(point, parent);
-        if (tiles.containsKey(uidFor)) return tiles.get(uidFor);
-        PathfindingTile pathTile = new PathfindingTile(point, parent);
-        tiles.put(uidFor, pathTile);
-        return pathTile;
+    private static int floor(double value) {
+        return (int) Math.floor(value);
     }
 
-    private PathfindingTile tileFrom(Point point) {
-        return tileFrom(point, null);
+    public enum Status {
+        NOT_STARTED, FOUND, NO_PATH, BUDGET_EXCEEDED
     }
 }
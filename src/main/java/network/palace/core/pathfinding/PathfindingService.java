@@ -0,0 +1,174 @@
+package network.palace.core.pathfinding;
+
+import lombok.Getter;
+import network.palace.core.Core;
+import org.bukkit.World;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs path searches on worker threads
+ * <p>
+ * Requests are queued and a limited number are started each tick. Starting a request captures snapshots of the chunks
+ * around its start and end on the main thread, then the search runs against the snapshots on a worker. Which blocks can
+ * be stood on is kept in a {@link WalkabilityGrid} between searches, and found routes are cached until a block along
+ * them changes. Identical requests share a search while one is running.
+ */
+public class PathfindingService {
+    private final ExecutorService workers;
+    private final Queue<Request> queue = new ArrayDeque<>();
+    private final Map<RouteCache.Key, CompletableFuture<List<Point>>> running = new ConcurrentHashMap<>();
+    private final RouteCache cache;
+    @Getter private final WalkabilityGrid grid;
+
+    private final int maxPerTick;
+    private final int margin;
+    private final int maxChunks;
+
+    public PathfindingService() {
+        int threads = Math.max(1, Core.getCoreConfig().getInt("pathfinding.threads", 2));
+        maxPerTick = Math.max(1, Core.getCoreConfig().getInt("pathfinding.max-per-tick", 4));
+        margin = Core.getCoreConfig().getInt("pathfinding.search-margin", 32);
+        maxChunks = Core.getCoreConfig().getInt("pathfinding.max-chunks", 256);
+        long cacheTime = Core.getCoreConfig().getLong("pathfinding.cache-time", 60000);
+        int cacheSize = Core.getCoreConfig().getInt("pathfinding.cache-size", 256);
+        cache = new RouteCache(cacheSize, cacheTime);
+        grid = new WalkabilityGrid(cache);
+        Core.registerListener(grid);
+        AtomicInteger count = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Core Pathfinding " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Core.runTaskTimer(Core.getInstance(), this::tick, 1L, 1L);
+    }
+
+    /**
+     * Find a path between two blocks
+     *
+     * @param start the block to start on
+     * @param end   the block to end on
+     * @return a future completed off the main thread with the blocks to walk on, or null if there is no path
+     * @implNote Paths are shared with the route cache, neither the list nor its points may be modified
+     */
+    public CompletableFuture<List<Point>> findPath(Point start, Point end) {
+        RouteCache.Key key = new RouteCache.Key(start, end);
+        RouteCache.Route cached = cache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.path);
+        }
+        return running.computeIfAbsent(key, k -> {
+            CompletableFuture<List<Point>> future = new CompletableFuture<>();
+            synchronized (queue) {
+                queue.add(new Request(k, start, end, future));
+            }
+            return future;
+        });
+    }
+
+    /**
+     * Find a path between two blocks
+     *
+     * @param start    the block to start on
+     * @param end      the block to end on
+     * @param callback called on the main thread with the blocks to walk on, or null if there is no path
+     */
+    public void findPath(Point start, Point end, Consumer<List<Point>> callback) {
+        findPath(start, end).whenComplete((path, error) -> Core.runTask(Core.getInstance(), () -> callback.accept(error == null ? path : null)));
+    }
+
+    /**
+     * Forget every cached route and walkability section
+     */
+    public void clearCache() {
+        cache.clear();
+        grid.clear();
+    }
+
+    public int getCachedRoutes() {
+        return cache.size();
+    }
+
+    public int getQueued() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    private void tick() {
+        for (int i = 0; i < maxPerTick; i++) {
+            Request request;
+            synchronized (queue) {
+                request = queue.poll();
+            }
+            if (request == null) return;
+            try {
+                start(request);
+            } catch (Exception e) {
+                finish(request, null, 0, e);
+            }
+        }
+    }
+
+    private void start(Request request) {
+        World world = request.end.getWorld();
+        int minX = (int) Math.floor(Math.min(request.start.getX(), request.end.getX())) - margin;
+        int minZ = (int) Math.floor(Math.min(request.start.getZ(), request.end.getZ())) - margin;
+        int maxX = (int) Math.floor(Math.max(request.start.getX(), request.end.getX())) + margin;
+        int maxZ = (int) Math.floor(Math.max(request.start.getZ(), request.end.getZ())) + margin;
+        long chunks = (long) ((maxX >> 4) - (minX >> 4) + 1) * ((maxZ >> 4) - (minZ >> 4) + 1);
+        if (world == null || chunks > maxChunks) {
+            finish(request, null, grid.getGeneration(), null);
+            return;
+        }
+        long generation = grid.getGeneration();
+        SnapshotBlockAccess snapshot = SnapshotBlockAccess.capture(world, minX, minZ, maxX, maxZ);
+        workers.execute(() -> {
+            try {
+                BlockAccess blocks = grid.wrap(world, snapshot, generation);
+                finish(request, new Pathfinder(request.start, request.end, blocks).findPath(), generation, null);
+            } catch (Exception e) {
+                finish(request, null, 0, e);
+            }
+        });
+    }
+
+    private void finish(Request request, List<Point> path, long generation, Exception error) {
+        if (error != null) {
+            running.remove(request.key);
+            Core.logMessage("Pathfinding", "Error finding path from " + request.start + " to " + request.end + ": " + error.getMessage());
+            request.future.completeExceptionally(error);
+            return;
+        }
+        List<Point> result = path == null ? null : Collections.unmodifiableList(path);
+        // Cache before removing the running search, so an identical request in between doesn't search again
+        cache.put(request.key, result, generation);
+        running.remove(request.key);
+        request.future.complete(result);
+    }
+
+    /**
+     * Stop the worker threads
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static class Request {
+        private final RouteCache.Key key;
+        private final Point start;
+        private final Point end;
+        private final CompletableFuture<List<Point>> future;
+
+        private Request(RouteCache.Key key, Point start, Point end, CompletableFuture<List<Point>> future) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+            this.future = future;
+        }
+    }
+}
@@ -2,11 +2,11 @@ package network.palace.core.pathfinding;
 
 import lombok.Getter;
 
+/**
+ * A step of a path found by a {@link Pathfinder}
+ */
 public class PathfindingTile {
 
-    private final int STRAIGHT_SCORE = 10;
-    private final int DIAGONAL_SCORE = 14;
-
     @Getter private Point point;
     @Getter private PathfindingTile parent;
 
@@ -14,40 +14,11 @@ public class PathfindingTile {
     @Getter private int gScore;
     @Getter private int hScore;
 
-    private boolean ordinalMovement;
-
-    public PathfindingTile(Point point, PathfindingTile tile) {
+    public PathfindingTile(Point point, PathfindingTile parent, int gScore, int hScore) {
         this.point = point;
-        this.parent = tile;
-    }
-
-    public void updateScores(PathfindingTile start, PathfindingTile end) {
-        PathfindingTile current = getParent();
-        int combinedScore = 0;
-
-        while(!current.equals(start)) {
-            combinedScore += current.getGScore();
-            current = current.getParent();
-        }
-        ordinalMovement = isOrdinalMovement(parent, this);
-        if (ordinalMovement) {
-            gScore = combinedScore + STRAIGHT_SCORE;
-        } else {
-            gScore = combinedScore + DIAGONAL_SCORE;
-        }
-
-        hScore = ((int) Math.ceil(end.getPoint().distanceSquared(point)));
-        fScore = hScore + gScore;
-    }
-
-    private boolean isOrdinalMovement(PathfindingTile start, PathfindingTile destination) {
-        Point startPoint = start.getPoint();
-        Point endPoint = destination.getPoint();
-
-        return startPoint.distanceSquared(endPoint) < 2;
-    }
-
-    public static double getUid(Point point, PathfindingTile parent) {
-        return (point.getX() + point.getY() + point.getZ()) * (parent == null ? 1 : getUid(parent.getPoint(), parent.getParent()));
+        this.parent = parent;
+        this.gScore = gScore;
+        this.hScore = hScore;
+        this.fScore = gScore + hScore;
     }
 }
@@ -0,0 +1,205 @@
+package network.palace.core.pathfinding;
+
+import java.util.*;
+
+/**
+ * Remembers the paths found between pairs of blocks
+ * <p>
+ * Found routes are kept until a block changes in one of the chunk sections they pass through, or they're pushed out
+ * by newer routes. Searches that found nothing are only kept for a short time, since a change anywhere could open a
+ * path.
+ */
+final class RouteCache {
+    private static final int RECENT_CHANGES = 1024;
+
+    private final int maxSize;
+    private final long missTime;
+    private final LinkedHashMap<Key, Route> routes = new LinkedHashMap<>(16, 0.75f, true);
+    // World -> section -> routes passing through it
+    private final Map<UUID, Map<Long, Set<Key>>> bySection = new HashMap<>();
+    // The last invalidated sections, to catch changes made while a route was being searched
+    private final UUID[] recentWorlds = new UUID[RECENT_CHANGES];
+    private final long[] recentSections = new long[RECENT_CHANGES];
+    private final long[] recentGenerations = new long[RECENT_CHANGES];
+    private int recentCount = 0;
+
+    RouteCache(int maxSize, long missTime) {
+        this.maxSize = maxSize;
+        this.missTime = missTime;
+    }
+
+    /**
+     * Get a cached route
+     *
+     * @param key the route
+     * @return the route, or null if it isn't cached
+     */
+    synchronized Route get(Key key) {
+        Route route = routes.get(key);
+        if (route == null) return null;
+        if (route.path == null && System.currentTimeMillis() - route.time >= missTime) {
+            remove(key);
+            return null;
+        }
+        return route;
+    }
+
+    /**
+     * Cache a route
+     *
+     * @param key        the route
+     * @param path       the blocks to walk on, or null if there is no path
+     * @param generation the {@link WalkabilityGrid} generation read before the blocks searched were captured
+     */
+    synchronized void put(Key key, List<Point> path, long generation) {
+        long[] sections = path == null ? new long[0] : sections(path);
+        if (path != null && changedSince(key.world, sections, generation)) return;
+        remove(key);
+        routes.put(key, new Route(path, sections, System.currentTimeMillis()));
+        if (key.world != null) {
+            Map<Long, Set<Key>> worldSections = bySection.computeIfAbsent(key.world, w -> new HashMap<>());
+            for (long section : sections) {
+                worldSections.computeIfAbsent(section, s -> new HashSet<>()).add(key);
+            }
+        }
+        while (routes.size() > maxSize) {
+            remove(routes.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Forget every route that passes through a chunk section
+     *
+     * @param world      the world
+     * @param section    the section, packed with {@link NodePool#pack(int, int, int)}
+     * @param generation the {@link WalkabilityGrid} generation of the change
+     */
+    synchronized void invalidate(UUID world, long section, long generation) {
+        int slot = recentCount++ % RECENT_CHANGES;
+        recentWorlds[slot] = world;
+        recentSections[slot] = section;
+        recentGenerations[slot] = generation;
+        Map<Long, Set<Key>> worldSections = bySection.get(world);
+        if (worldSections == null) return;
+        Set<Key> keys = worldSections.get(section);
+        if (keys == null) return;
+        for (Key key : new ArrayList<>(keys)) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Forget every route in a world
+     *
+     * @param world the world
+     */
+    synchronized void removeWorld(UUID world) {
+        routes.keySet().removeIf(key -> world.equals(key.world));
+        bySection.remove(world);
+    }
+
+    synchronized void clear() {
+        routes.clear();
+        bySection.clear();
+    }
+
+    synchronized int size() {
+        return routes.size();
+    }
+
+    private boolean changedSince(UUID world, long[] sections, long generation) {
+        int count = Math.min(recentCount, RECENT_CHANGES);
+        // Too many changes to tell whether the route was affected
+        if (recentCount > RECENT_CHANGES && recentGenerations[recentCount % RECENT_CHANGES] > generation) return true;
+        for (int i = 0; i < count; i++) {
+            if (recentGenerations[i] <= generation || !recentWorlds[i].equals(world)) continue;
+            for (long section : sections) {
+                if (section == recentSections[i]) return true;
+            }
+        }
+        return false;
+    }
+
+    private void remove(Key key) {
+        Route route = routes.remove(key);
+        if (route == null || key.world == null) return;
+        Map<Long, Set<Key>> worldSections = bySection.get(key.world);
+        if (worldSections == null) return;
+        for (long section : route.sections) {
+            Set<Key> keys = worldSections.get(section);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) worldSections.remove(section);
+        }
+        if (worldSections.isEmpty()) bySection.remove(key.world);
+    }
+
+    /**
+     * Get every section whose blocks were read to decide a path could be walked
+     */
+    private static long[] sections(List<Point> path) {
+        Set<Long> sections = new HashSet<>();
+        Point previous = null;
+        for (Point point : path) {
+            int x = (int) Math.floor(point.getX()), y = (int) Math.floor(point.getY()), z = (int) Math.floor(point.getZ());
+            addColumn(sections, x, y, z);
+            if (previous != null) {
+                // Diagonal steps also check the two blocks beside them
+                int px = (int) Math.floor(previous.getX()), pz = (int) Math.floor(previous.getZ());
+                if (px != x && pz != z) {
+                    addColumn(sections, px, y, z);
+                    addColumn(sections, x, y, pz);
+                }
+            }
+            previous = point;
+        }
+        long[] result = new long[sections.size()];
+        int i = 0;
+        for (long section : sections) result[i++] = section;
+        return result;
+    }
+
+    private static void addColumn(Set<Long> sections, int x, int y, int z) {
+        for (int sy = (y - 1) >> 4; sy <= (y + 3) >> 4; sy++) {
+            sections.add(NodePool.pack(x >> 4, sy, z >> 4));
+        }
+    }
+
+    static final class Route {
+        final List<Point> path;
+        private final long[] sections;
+        private final long time;
+
+        private Route(List<Point> path, long[] sections, long time) {
+            this.path = path;
+            this.sections = sections;
+            this.time = time;
+        }
+    }
+
+    /**
+     * A route between two blocks in a world
+     */
+    static final class Key {
+        private final UUID world;
+        private final long start;
+        private final long end;
+
+        Key(Point start, Point end) {
+            this.world = end.getWorld() == null ? null : end.getWorld().getUID();
+            this.start = NodePool.pack((int) Math.floor(start.getX()), (int) Math.floor(start.getY()), (int) Math.floor(start.getZ()));
+            this.end = NodePool.pack((int) Math.floor(end.getX()), (int) Math.floor(end.getY()), (int) Math.floor(end.getZ()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return start == other.start && end == other.end && Objects.equals(world, other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world, start, end);
+        }
+    }
+}
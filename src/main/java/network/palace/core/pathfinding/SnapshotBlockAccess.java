@@ -0,0 +1,80 @@
+package network.palace.core.pathfinding;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads blocks from chunk snapshots, so a search can run off the main thread
+ * <p>
+ * Blocks in chunks that weren't captured are treated as barriers.
+ */
+public class SnapshotBlockAccess implements BlockAccess {
+    private final Map<Long, ChunkSnapshot> chunks;
+
+    private SnapshotBlockAccess(Map<Long, ChunkSnapshot> chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Capture the loaded chunks in an area
+     *
+     * @param world the world
+     * @param minX  the lowest block x coordinate
+     * @param minZ  the lowest block z coordinate
+     * @param maxX  the highest block x coordinate
+     * @param maxZ  the highest block z coordinate
+     * @return the block access
+     * @implNote Must be called on the main thread, unloaded chunks aren't loaded
+     */
+    public static SnapshotBlockAccess capture(World world, int minX, int minZ, int maxX, int maxZ) {
+        Map<Long, ChunkSnapshot> chunks = new HashMap<>();
+        for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+            for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                if (!world.isChunkLoaded(cx, cz)) continue;
+                Chunk chunk = world.getChunkAt(cx, cz);
+                chunks.put(key(cx, cz), chunk.getChunkSnapshot(false, false, false));
+            }
+        }
+        return new SnapshotBlockAccess(chunks);
+    }
+
+    /**
+     * Get the snapshot of a chunk
+     *
+     * @param cx the chunk x coordinate
+     * @param cz the chunk z coordinate
+     * @return the snapshot, or null if the chunk wasn't captured
+     */
+    public ChunkSnapshot getChunk(int cx, int cz) {
+        return chunks.get(key(cx, cz));
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Material getType(int x, int y, int z) {
+        ChunkSnapshot chunk = chunks.get(key(x >> 4, z >> 4));
+        if (chunk == null) return Material.BARRIER;
+        Material type = Material.getMaterial(chunk.getBlockTypeId(x & 15, y, z & 15));
+        return type == null ? Material.BARRIER : type;
+    }
+
+    @Override
+    public byte getData(int x, int y, int z) {
+        ChunkSnapshot chunk = chunks.get(key(x >> 4, z >> 4));
+        if (chunk == null) return 0;
+        return (byte) chunk.getBlockData(x & 15, y, z & 15);
+    }
+
+    static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,87 @@
+package network.palace.core.pathfinding;
+
+import org.bukkit.Material;
+
+/**
+ * Rules for which blocks can be walked on and through
+ */
+public final class Walkability {
+    private static final int OPEN_BIT = 0x4;
+    private static final int DOOR_TOP_BIT = 0x8;
+
+    private Walkability() {
+    }
+
+    /**
+     * Check whether something can stand on a block, with two blocks of space above it
+     *
+     * @param blocks the blocks
+     * @param x      the x coordinate of the block being stood on
+     * @param y      the y coordinate of the block being stood on
+     * @param z      the z coordinate of the block being stood on
+     * @return true if the block can be stood on
+     */
+    public static boolean canStand(BlockAccess blocks, int x, int y, int z) {
+        if (y < 0 || y + 2 > 255) return false;
+        return canWalkOn(blocks, x, y, z) && canWalkThrough(blocks, x, y + 1, z) && canWalkThrough(blocks, x, y + 2, z);
+    }
+
+    public static boolean canWalkThrough(BlockAccess blocks, int x, int y, int z) {
+        // Everything above the build height is air, everything below the world is solid
+        if (y > 255) return true;
+        if (y < 0) return false;
+        switch (blocks.getType(x, y, z)) {
+            case AIR:
+            case LAVA:
+            case WATER:
+            case PORTAL:
+                return true;
+            case IRON_DOOR_BLOCK:
+            case DARK_OAK_DOOR:
+            case ACACIA_DOOR:
+            case BIRCH_DOOR:
+            case JUNGLE_DOOR:
+            case WOODEN_DOOR:
+            case SPRUCE_DOOR:
+                // Only the bottom half of a door stores whether it's open
+                byte data = blocks.getData(x, y, z);
+                if ((data & DOOR_TOP_BIT) != 0) data = blocks.getData(x, y - 1, z);
+                return (data & OPEN_BIT) != 0;
+            case ACACIA_FENCE_GATE:
+            case BIRCH_FENCE_GATE:
+            case DARK_OAK_FENCE_GATE:
+            case JUNGLE_FENCE_GATE:
+            case FENCE_GATE:
+            case SPRUCE_FENCE_GATE:
+                return (blocks.getData(x, y, z) & OPEN_BIT) != 0;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean canWalkOn(BlockAccess blocks, int x, int y, int z) {
+        if (canWalkThrough(blocks, x, y, z)) return false;
+        return canWalkOn(blocks.getType(x, y, z));
+    }
+
+    private static boolean canWalkOn(Material type) {
+        switch (type) {
+            case LADDER:
+            case WHEAT:
+            case LONG_GRASS:
+            case RAILS:
+            case ACTIVATOR_RAIL:
+            case DETECTOR_RAIL:
+            case POWERED_RAIL:
+            case CAULDRON:
+            case YELLOW_FLOWER:
+            case FLOWER_POT:
+            case RED_ROSE:
+            case CAKE_BLOCK:
+            case CARPET:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
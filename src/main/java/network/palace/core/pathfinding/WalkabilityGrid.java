@@ -0,0 +1,347 @@
+package network.palace.core.pathfinding;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.*;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which blocks can be stood on, one bitset per 16x16x16 chunk section
+ * <p>
+ * Sections are built from chunk snapshots the first time a search needs them and kept until a block changes nearby.
+ * Changes are picked up from block events, so blocks changed without an event (e.g. by WorldEdit) need
+ * {@link #invalidate(World, int, int, int)} to be called.
+ */
+public class WalkabilityGrid implements Listener {
+    private static final int SECTION_LONGS = 16 * 16 * 16 / 64;
+
+    private final RouteCache routes;
+    private final Map<UUID, WorldGrid> worlds = new ConcurrentHashMap<>();
+    // Counts block changes, so a section built from an older snapshot is never stored over a newer change
+    private final AtomicLong generation = new AtomicLong();
+
+    WalkabilityGrid(RouteCache routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * Get the current generation, to be read before capturing the snapshots passed to
+     * {@link #wrap(World, SnapshotBlockAccess, long)}
+     *
+     * @return the generation
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Read walkability from the grid, building missing sections from snapshots
+     *
+     * @param world      the world the snapshots were captured from
+     * @param blocks     the snapshots
+     * @param generation the generation read before the snapshots were captured
+     * @return the block access
+     */
+    BlockAccess wrap(World world, SnapshotBlockAccess blocks, long generation) {
+        return new GridBlockAccess(worlds.computeIfAbsent(world.getUID(), w -> new WorldGrid()), blocks, generation);
+    }
+
+    /**
+     * Forget what's known about the blocks around a block that changed
+     *
+     * @param world the world
+     * @param x     the x coordinate of the block
+     * @param y     the y coordinate of the block
+     * @param z     the z coordinate of the block
+     * @implNote Must be called on the main thread
+     */
+    public void invalidate(World world, int x, int y, int z) {
+        UUID uuid = world.getUID();
+        long changed = generation.incrementAndGet();
+        routes.invalidate(uuid, NodePool.pack(x >> 4, y >> 4, z >> 4), changed);
+        WorldGrid grid = worlds.get(uuid);
+        if (grid == null) return;
+        // A block decides whether the three blocks below it and the one above can be stood on
+        Section tombstone = new Section(null, changed);
+        for (int sy = (y - 3) >> 4; sy <= (y + 1) >> 4; sy++) {
+            grid.sections.put(NodePool.pack(x >> 4, sy, z >> 4), tombstone);
+        }
+    }
+
+    public void invalidate(Block block) {
+        invalidate(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Forget every section
+     */
+    public void clear() {
+        for (WorldGrid grid : worlds.values()) {
+            grid.clearedAt = generation.incrementAndGet();
+            grid.sections.clear();
+        }
+    }
+
+    public int getSectionCount() {
+        int count = 0;
+        for (WorldGrid grid : worlds.values()) {
+            count += grid.sections.size();
+        }
+        return count;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        // Also covers spreading and entities forming blocks
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        invalidate(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        invalidate(event.getBlock());
+        invalidateAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        invalidateAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        invalidatePiston(event.getBlock(), event.getBlocks(), event.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        invalidatePiston(event.getBlock(), event.getBlocks(), event.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBlockRedstone(BlockRedstoneEvent event) {
+        if (isOpenable(event.getBlock().getType()) && (event.getOldCurrent() > 0) != (event.getNewCurrent() > 0)) {
+            invalidate(event.getBlock());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerInteract(PlayerInteractEvent event) {
+        Block block = event.getClickedBlock();
+        if (block != null && event.getAction() == Action.RIGHT_CLICK_BLOCK && isOpenable(block.getType())) {
+            invalidate(block);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStructureGrow(StructureGrowEvent event) {
+        for (BlockState state : event.getBlocks()) {
+            invalidate(state.getWorld(), state.getX(), state.getY(), state.getZ());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLeavesDecay(LeavesDecayEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        WorldGrid grid = worlds.get(event.getWorld().getUID());
+        if (grid == null) return;
+        // Searches still running from before this could store sections over changes whose tombstones are dropped here
+        grid.clearedAt = generation.incrementAndGet();
+        int cx = event.getChunk().getX(), cz = event.getChunk().getZ();
+        for (int sy = 0; sy < 16; sy++) {
+            grid.sections.remove(NodePool.pack(cx, sy, cz));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getUID());
+        routes.removeWorld(event.getWorld().getUID());
+    }
+
+    private void invalidateAll(List<Block> blocks) {
+        for (Block block : blocks) {
+            invalidate(block);
+        }
+    }
+
+    private void invalidatePiston(Block piston, List<Block> blocks, BlockFace direction) {
+        invalidate(piston.getRelative(direction));
+        for (Block block : blocks) {
+            invalidate(block);
+            invalidate(block.getRelative(direction));
+        }
+    }
+
+    private static boolean isOpenable(Material type) {
+        switch (type) {
+            case IRON_DOOR_BLOCK:
+            case DARK_OAK_DOOR:
+            case ACACIA_DOOR:
+            case BIRCH_DOOR:
+            case JUNGLE_DOOR:
+            case WOODEN_DOOR:
+            case SPRUCE_DOOR:
+            case ACACIA_FENCE_GATE:
+            case BIRCH_FENCE_GATE:
+            case DARK_OAK_FENCE_GATE:
+            case JUNGLE_FENCE_GATE:
+            case FENCE_GATE:
+            case SPRUCE_FENCE_GATE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int bit(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    private static final class WorldGrid {
+        private final Map<Long, Section> sections = new ConcurrentHashMap<>();
+        private volatile long clearedAt = 0;
+    }
+
+    /**
+     * A built section, or a tombstone left by a change if bits is null
+     */
+    private static final class Section {
+        private final long[] bits;
+        private final long generation;
+
+        private Section(long[] bits, long generation) {
+            this.bits = bits;
+            this.generation = generation;
+        }
+    }
+
+    private static final class GridBlockAccess implements BlockAccess {
+        private final WorldGrid grid;
+        private final SnapshotBlockAccess blocks;
+        private final long generation;
+        // Sections this search has already looked up, including ones it couldn't store in the grid
+        private final Map<Long, long[]> local = new HashMap<>();
+        private long lastKey = Long.MIN_VALUE;
+        private long[] lastBits;
+
+        private GridBlockAccess(WorldGrid grid, SnapshotBlockAccess blocks, long generation) {
+            this.grid = grid;
+            this.blocks = blocks;
+            this.generation = generation;
+        }
+
+        @Override
+        public Material getType(int x, int y, int z) {
+            return blocks.getType(x, y, z);
+        }
+
+        @Override
+        public byte getData(int x, int y, int z) {
+            return blocks.getData(x, y, z);
+        }
+
+        @Override
+        public boolean canStand(int x, int y, int z) {
+            if (y < 0 || y + 2 > 255) return false;
+            long key = NodePool.pack(x >> 4, y >> 4, z >> 4);
+            long[] bits = key == lastKey ? lastBits : section(key, x >> 4, y >> 4, z >> 4);
+            if (bits == null) return false;
+            lastKey = key;
+            lastBits = bits;
+            int bit = bit(x, y, z);
+            return (bits[bit >> 6] & (1L << bit)) != 0;
+        }
+
+        private long[] section(long key, int cx, int cy, int cz) {
+            long[] bits = local.get(key);
+            if (bits != null) return bits;
+            Section section = grid.sections.get(key);
+            if (section != null && section.bits != null && section.generation <= generation) {
+                bits = section.bits;
+            } else {
+                ChunkSnapshot chunk = blocks.getChunk(cx, cz);
+                if (chunk == null) return null;
+                bits = build(cx << 4, cy << 4, cz << 4);
+                store(key, new Section(bits, generation));
+            }
+            local.put(key, bits);
+            return bits;
+        }
+
+        private long[] build(int minX, int minY, int minZ) {
+            long[] bits = new long[SECTION_LONGS];
+            for (int y = minY; y < minY + 16; y++) {
+                for (int z = minZ; z < minZ + 16; z++) {
+                    for (int x = minX; x < minX + 16; x++) {
+                        if (!Walkability.canStand(blocks, x, y, z)) continue;
+                        int bit = bit(x, y, z);
+                        bits[bit >> 6] |= 1L << bit;
+                    }
+                }
+            }
+            return bits;
+        }
+
+        private void store(long key, Section built) {
+            grid.sections.compute(key, (k, existing) -> {
+                if (existing == null) return built.generation >= grid.clearedAt ? built : null;
+                // Only replace tombstones left before the snapshot was captured
+                if (existing.bits == null && existing.generation <= built.generation) return built;
+                return existing;
+            });
+        }
+    }
+}
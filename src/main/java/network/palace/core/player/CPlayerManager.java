@@ -75,10 +75,33 @@ public interface CPlayerManager {
     /**
      * Gets online players.
      *
-     * @return the online players
+     * @return a copy of the online players, which can be modified
      */
     List<CPlayer> getOnlinePlayers();
 
+    /**
+     * Get the online players without copying them
+     *
+     * @return a snapshot of the online players, which must not be modified
+     * @implNote Prefer this over {@link #getOnlinePlayers()} in code that runs for every packet or tick
+     */
+    CPlayer[] getOnlinePlayerSnapshot();
+
+    /**
+     * Get the online players with a rank
+     *
+     * @param rank the rank
+     * @return the players, which must not be modified
+     */
+    CPlayer[] getOnlinePlayers(Rank rank);
+
+    /**
+     * Update lookups by rank after an online player's rank changed
+     *
+     * @param player the player whose rank changed
+     */
+    void rankChanged(CPlayer player);
+
     /**
      * Display the rank to all players.
      *
@@ -39,19 +39,19 @@ public interface CPlayerScoreboardManager {
     CPlayerScoreboardManager title(String title);
 
     /**
-     * Set the rank tags
+     * Start showing rank tags to this player
      */
     void setupPlayerTags();
 
     /**
-     * Add player tag.
+     * Show a player's rank tag
      *
      * @param otherPlayer the other player
      */
     void addPlayerTag(CPlayer otherPlayer);
 
     /**
-     * Remove player tag.
+     * Stop showing a player's rank tag
      *
      * @param otherPlayer the other player
      */
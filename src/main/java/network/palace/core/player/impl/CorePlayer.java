@@ -47,12 +47,13 @@ public class CorePlayer implements CPlayer {
     @Getter private final UUID uuid;
     private final String name;
     @Getter @Setter private int protocolId = -1;
-    @Getter @Setter private Rank rank;
+    @Getter private Rank rank;
     private List<RankTag> tags;
     @Getter @Setter private String locale;
     @Getter @Setter private PlayerStatus status = PlayerStatus.LOGIN;
     @Getter private CPlayerAchievementManager achievementManager;
-    @Getter @Setter private CPlayerScoreboardManager scoreboard = new CorePlayerScoreboardManager(this);
+    @Getter @Setter private CPlayerScoreboardManager scoreboard = Core.getCoreConfig().getBoolean("isPacketSidebarEnabled", false) ?
+            new CorePlayerPacketScoreboardManager(this) : new CorePlayerScoreboardManager(this);
     @Getter private CPlayerActionBarManager actionBar = new CorePlayerActionBarManager(this);
     @Getter private CPlayerBossBarManager bossBar = new CorePlayerBossBarManager(this);
     @Getter private CPlayerHeaderFooterManager headerFooter = new CorePlayerHeaderFooterManager(this);
@@ -591,6 +592,12 @@ public class CorePlayer implements CPlayer {
         return Bukkit.getPlayer(getUniqueId());
     }
 
+    @Override
+    public void setRank(Rank rank) {
+        this.rank = rank;
+        Core.getPlayerManager().rankChanged(this);
+    }
+
     @Override
     public UUID getUniqueId() {
         return getUuid();
@@ -0,0 +1,335 @@
+package network.palace.core.player.impl;
+
+import network.palace.core.Core;
+import network.palace.core.packets.server.scoreboard.WrapperPlayServerScoreboardTeam;
+import network.palace.core.player.CPlayer;
+import network.palace.core.player.Rank;
+import network.palace.core.player.RankTag;
+import org.bukkit.ChatColor;
+
+import java.util.*;
+
+/**
+ * Shows every player's rank and tag in front of their name using one shared set of teams
+ * <p>
+ * Team membership is computed once for the whole server rather than separately on every player's scoreboard. Changes
+ * are queued and sent once per tick as one packet per changed team per viewer, so a wave of joins costs a few packets
+ * per viewer instead of a scoreboard change for every pair of players.
+ *
+ * <p>
+ * A viewer can also hide individual players' tags, which only changes what is sent to that viewer.
+ *
+ * @implNote The teams only exist client-side, they aren't registered on any Bukkit scoreboard
+ */
+public class NametagManager {
+    private final Map<String, NametagTeam> teams = new HashMap<>();
+    private final Map<UUID, Member> members = new HashMap<>();
+    // Entry -> the name of the team it's in
+    private final Map<String, String> teamByEntry = new HashMap<>();
+    private final Map<UUID, Viewer> viewers = new HashMap<>();
+    // Team name -> entries changed since the last flush, mapped to whether they were in the team before the change
+    private final Map<String, Map<String, Boolean>> pending = new LinkedHashMap<>();
+    private boolean viewersChanged = false;
+
+    /**
+     * Instantiates a new nametag manager.
+     */
+    public NametagManager() {
+        Core.runTaskTimer(Core.getInstance(), this::flush, 1L, 1L);
+    }
+
+    /**
+     * Start showing nametags to a player. Every existing team is sent to them on the next flush.
+     *
+     * @param player the player
+     */
+    public void addViewer(CPlayer player) {
+        if (viewers.containsKey(player.getUniqueId())) return;
+        viewers.put(player.getUniqueId(), new Viewer(player));
+        viewersChanged = true;
+    }
+
+    /**
+     * Add a player to the team for their rank and tags, moving them out of their previous team if those changed
+     *
+     * @param player the player
+     */
+    public void addMember(CPlayer player) {
+        if (player == null || player.getRank() == null || player.getTags() == null) return;
+        String teamName = teamName(player.getRank(), player.getTags());
+        Member member = members.get(player.getUniqueId());
+        if (member != null) {
+            if (member.team.equals(teamName)) return;
+            leave(member);
+        }
+        String entry = player.getName();
+        NametagTeam team = teams.computeIfAbsent(teamName, name -> new NametagTeam(name, player.getRank(), player.getTags()));
+        markChanged(team, entry);
+        team.entries.add(entry);
+        teamByEntry.put(entry, teamName);
+        members.put(player.getUniqueId(), new Member(teamName, entry));
+    }
+
+    /**
+     * Stop showing a player's tag to one viewer, without changing what anyone else sees
+     *
+     * @param viewer the viewer, which must already have nametags set up
+     * @param player the player whose tag should be hidden
+     */
+    public void hideMember(CPlayer viewer, CPlayer player) {
+        setHidden(viewer, player, true);
+    }
+
+    /**
+     * Show a player's tag to one viewer again after it was hidden with {@link #hideMember(CPlayer, CPlayer)}
+     *
+     * @param viewer the viewer
+     * @param player the player whose tag should be shown
+     */
+    public void showMember(CPlayer viewer, CPlayer player) {
+        setHidden(viewer, player, false);
+    }
+
+    private void setHidden(CPlayer viewerPlayer, CPlayer player, boolean hidden) {
+        if (viewerPlayer == null || player == null) return;
+        Viewer viewer = viewers.get(viewerPlayer.getUniqueId());
+        if (viewer == null) return;
+        String entry = player.getName();
+        boolean wasHidden = viewer.hidden.contains(entry);
+        if (wasHidden == hidden) return;
+        viewer.hiddenChanged.putIfAbsent(entry, wasHidden);
+        if (hidden) {
+            viewer.hidden.add(entry);
+        } else {
+            viewer.hidden.remove(entry);
+        }
+        viewersChanged = true;
+    }
+
+    /**
+     * Remove a player from their team
+     *
+     * @param player the player
+     */
+    public void removeMember(CPlayer player) {
+        if (player == null) return;
+        Member member = members.remove(player.getUniqueId());
+        if (member != null) leave(member);
+    }
+
+    /**
+     * Remove a player as both a viewer and a team member
+     *
+     * @param player the player
+     */
+    public void removePlayer(CPlayer player) {
+        if (player == null) return;
+        viewers.remove(player.getUniqueId());
+        removeMember(player);
+        // A player's tag is shown to everyone again when they rejoin
+        String entry = player.getName();
+        for (Viewer viewer : viewers.values()) {
+            if (viewer.hidden.remove(entry)) viewer.hiddenChanged.putIfAbsent(entry, true);
+        }
+    }
+
+    /**
+     * Show or hide every nametag for a viewer
+     *
+     * @param player  the viewer
+     * @param visible whether nametags should be visible
+     */
+    public void setTagsVisible(CPlayer player, boolean visible) {
+        Viewer viewer = viewers.get(player.getUniqueId());
+        if (viewer == null || viewer.tagsVisible == visible) return;
+        viewer.tagsVisible = visible;
+        viewer.visibilityChanged = true;
+        viewersChanged = true;
+    }
+
+    /**
+     * Send every queued change to the viewers
+     */
+    public void flush() {
+        if (pending.isEmpty() && !viewersChanged) return;
+        Set<String> changedEntries = new HashSet<>();
+        pending.values().forEach(entries -> changedEntries.addAll(entries.keySet()));
+        for (Viewer viewer : viewers.values()) {
+            if (viewer.player.getBukkitPlayer() == null) continue;
+            try {
+                flush(viewer, changedEntries);
+            } catch (Exception e) {
+                Core.logMessage("NametagManager", "Error sending nametags to " + viewer.player.getName() + ": " + e.getMessage());
+            }
+        }
+        pending.clear();
+        viewersChanged = false;
+    }
+
+    private void flush(Viewer viewer, Set<String> changedEntries) {
+        if (viewer.fresh) {
+            // Creating a team includes its current entries, so no other changes need to be sent
+            for (NametagTeam team : teams.values()) {
+                if (team.entries.isEmpty()) continue;
+                packet(team, WrapperPlayServerScoreboardTeam.Mode.TEAM_CREATED, visible(team, viewer), viewer.tagsVisible).sendPacket(viewer.player);
+                viewer.created.add(team.name);
+            }
+            viewer.fresh = false;
+            viewer.visibilityChanged = false;
+            viewer.hiddenChanged.clear();
+            return;
+        }
+        if (viewer.visibilityChanged) {
+            for (String name : viewer.created) {
+                packet(teams.get(name), WrapperPlayServerScoreboardTeam.Mode.TEAM_UPDATED, null, viewer.tagsVisible).sendPacket(viewer.player);
+            }
+            viewer.visibilityChanged = false;
+        }
+        Set<String> createdNow = new HashSet<>();
+        Map<String, List<String>> removed = new LinkedHashMap<>();
+        Map<String, List<String>> added = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Boolean>> e : pending.entrySet()) {
+            NametagTeam team = teams.get(e.getKey());
+            if (!viewer.created.contains(team.name)) {
+                if (team.entries.isEmpty()) continue;
+                createdNow.add(team.name);
+                continue;
+            }
+            e.getValue().forEach((entry, wasMember) -> {
+                boolean wasShown = wasMember && !wasHidden(viewer, entry);
+                boolean shown = team.entries.contains(entry) && !viewer.hidden.contains(entry);
+                if (wasShown && !shown) removed.computeIfAbsent(team.name, n -> new ArrayList<>()).add(entry);
+                if (!wasShown && shown) added.computeIfAbsent(team.name, n -> new ArrayList<>()).add(entry);
+            });
+        }
+        // Entries that changed team are covered above, this only handles viewers hiding or showing a tag
+        for (Map.Entry<String, Boolean> e : viewer.hiddenChanged.entrySet()) {
+            String entry = e.getKey();
+            boolean hidden = viewer.hidden.contains(entry);
+            String teamName = teamByEntry.get(entry);
+            if (hidden == e.getValue() || changedEntries.contains(entry) || teamName == null) continue;
+            if (!viewer.created.contains(teamName)) {
+                if (!hidden) createdNow.add(teamName);
+                continue;
+            }
+            if (createdNow.contains(teamName)) continue;
+            (hidden ? removed : added).computeIfAbsent(teamName, n -> new ArrayList<>()).add(entry);
+        }
+        viewer.hiddenChanged.clear();
+        // Removals go out first, the client rejects removing an entry from a team it has already moved out of
+        removed.forEach((name, entries) -> packet(teams.get(name), WrapperPlayServerScoreboardTeam.Mode.PLAYERS_REMOVED, entries, viewer.tagsVisible).sendPacket(viewer.player));
+        for (String name : createdNow) {
+            NametagTeam team = teams.get(name);
+            packet(team, WrapperPlayServerScoreboardTeam.Mode.TEAM_CREATED, visible(team, viewer), viewer.tagsVisible).sendPacket(viewer.player);
+            viewer.created.add(name);
+        }
+        added.forEach((name, entries) -> packet(teams.get(name), WrapperPlayServerScoreboardTeam.Mode.PLAYERS_ADDED, entries, viewer.tagsVisible).sendPacket(viewer.player));
+    }
+
+    private static boolean wasHidden(Viewer viewer, String entry) {
+        Boolean wasHidden = viewer.hiddenChanged.get(entry);
+        return wasHidden != null ? wasHidden : viewer.hidden.contains(entry);
+    }
+
+    /**
+     * Get the entries of a team a viewer should see
+     */
+    private static Collection<String> visible(NametagTeam team, Viewer viewer) {
+        if (viewer.hidden.isEmpty()) return team.entries;
+        List<String> entries = new ArrayList<>(team.entries.size());
+        for (String entry : team.entries) {
+            if (!viewer.hidden.contains(entry)) entries.add(entry);
+        }
+        return entries;
+    }
+
+    private void leave(Member member) {
+        NametagTeam team = teams.get(member.team);
+        if (team == null) return;
+        markChanged(team, member.entry);
+        team.entries.remove(member.entry);
+        teamByEntry.remove(member.entry);
+    }
+
+    private void markChanged(NametagTeam team, String entry) {
+        pending.computeIfAbsent(team.name, name -> new HashMap<>()).putIfAbsent(entry, team.entries.contains(entry));
+    }
+
+    private static WrapperPlayServerScoreboardTeam packet(NametagTeam team, int mode, Collection<String> entries, boolean tagsVisible) {
+        WrapperPlayServerScoreboardTeam packet = new WrapperPlayServerScoreboardTeam();
+        packet.setName(team.name);
+        packet.setMode(mode);
+        if (mode == WrapperPlayServerScoreboardTeam.Mode.TEAM_CREATED || mode == WrapperPlayServerScoreboardTeam.Mode.TEAM_UPDATED) {
+            packet.setDisplayName(team.name);
+            packet.setPrefix(team.prefix);
+            packet.setSuffix(team.suffix);
+            packet.setColor(team.color);
+            packet.setNameTagVisibility(tagsVisible ? "always" : "never");
+            packet.setCollisionRule("never");
+            packet.setPackOptionData(0);
+        }
+        if (entries != null) packet.setPlayers(new ArrayList<>(entries));
+        return packet;
+    }
+
+    /**
+     * Get the name of the team for a rank and set of tags
+     *
+     * @param rank the rank
+     * @param tags the tags
+     * @return the team name
+     */
+    public static String teamName(Rank rank, List<RankTag> tags) {
+        List<RankTag> sorted = new ArrayList<>(tags);
+        sorted.sort((rankTag, t1) -> t1.getId() - rankTag.getId());
+        return rank.getScoreboardTeamName() + (sorted.isEmpty() ? "" : sorted.get(0).getShortScoreboardTag());
+    }
+
+    private static class NametagTeam {
+        private final String name;
+        private final String prefix;
+        private final String suffix;
+        private final ChatColor color;
+        private final Set<String> entries = new LinkedHashSet<>();
+
+        private NametagTeam(String name, Rank rank, List<RankTag> tags) {
+            this.name = name;
+            this.prefix = limit(rank.getFormattedName() + " ");
+            this.suffix = limit(RankTag.formatScoreboardSuffix(new ArrayList<>(tags)));
+            this.color = rank.getTagColor();
+        }
+    }
+
+    /**
+     * Team prefixes and suffixes can't be longer than 16 characters
+     */
+    private static String limit(String text) {
+        return text.length() > 16 ? text.substring(0, 16) : text;
+    }
+
+    private static class Member {
+        private final String team;
+        private final String entry;
+
+        private Member(String team, String entry) {
+            this.team = team;
+            this.entry = entry;
+        }
+    }
+
+    private static class Viewer {
+        private final CPlayer player;
+        private final Set<String> created = new HashSet<>();
+        // Entries whose tags this viewer has hidden
+        private final Set<String> hidden = new HashSet<>();
+        // Entries hidden or shown since the last flush, mapped to whether they were hidden before
+        private final Map<String, Boolean> hiddenChanged = new HashMap<>();
+        private boolean fresh = true;
+        private boolean tagsVisible = true;
+        private boolean visibilityChanged = false;
+
+        private Viewer(CPlayer player) {
+            this.player = player;
+        }
+    }
+}
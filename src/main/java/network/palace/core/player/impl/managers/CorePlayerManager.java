@@ -7,6 +7,7 @@ import network.palace.core.Core;
 import network.palace.core.events.CoreOnlineCountUpdate;
 import network.palace.core.events.CorePlayerJoinedEvent;
 import network.palace.core.events.CurrentPackReceivedEvent;
+import network.palace.core.mongo.PlayerProfile;
 import network.palace.core.player.*;
 import network.palace.core.player.impl.CorePlayer;
 import network.palace.core.player.impl.CorePlayerDefaultScoreboard;
@@ -24,7 +25,7 @@ import java.util.*;
  */
 public class CorePlayerManager implements CPlayerManager {
     @Getter private CorePlayerDefaultScoreboard defaultScoreboard;
-    private final Map<UUID, CPlayer> onlinePlayers = new HashMap<>();
+    private final OnlinePlayerRegistry onlinePlayers = new OnlinePlayerRegistry();
     @Getter private int playerCount = 0;
 
     /**
@@ -34,50 +35,55 @@ public class CorePlayerManager implements CPlayerManager {
         Core.registerListener(new CorePlayerManagerListener());
         Core.registerListener(new CorePlayerStaffLoginListener());
         defaultScoreboard = new CorePlayerDefaultScoreboard();
+        long refreshInterval = Core.getCoreConfig().getLong("player-count.refresh-interval", 10000L);
+        long serverTimeout = Core.getCoreConfig().getLong("player-count.server-timeout", 30000L);
         Core.runTaskTimer(Core.getInstance(), new Runnable() {
-            boolean b = true;
+            long lastRefresh = 0;
+            boolean refreshing = false;
 
             @Override
             public void run() {
-                Core.getMongoHandler().setPlayerCount(Core.getInstanceName(), Core.isPlayground(), onlinePlayers.size());
-                if (b) {
-                    playerCount = Core.getMongoHandler().getPlayerCount();
+                Core.getMongoHandler().async().setPlayerCount(Core.getInstanceName(), Core.isPlayground(), onlinePlayers.size());
+                if (refreshing || System.currentTimeMillis() - lastRefresh < refreshInterval) return;
+                refreshing = true;
+                Core.getMongoHandler().async().sync(Core.getMongoHandler().async().getNetworkPlayerCount(serverTimeout), (count, error) -> {
+                    refreshing = false;
+                    lastRefresh = System.currentTimeMillis();
+                    if (error != null) {
+                        Core.logMessage("CorePlayerManager", "Error refreshing network player count: " + error.getMessage());
+                        return;
+                    }
+                    if (count == playerCount) return;
+                    playerCount = count;
                     new CoreOnlineCountUpdate(playerCount).call();
-                }
-                b = !b;
+                });
             }
         }, 20L, 100L);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void playerLoggedIn(UUID uuid, String name) throws Exception {
-        Document joinData = Core.getMongoHandler().getJoinData(uuid, "rank", "tags", "onlineData");
-        Rank rank;
-        List<RankTag> tags = new ArrayList<>();
+        Document joinData = Core.getMongoHandler().getJoinData(uuid, PlayerProfile.FIELDS);
+        PlayerProfile profile = PlayerProfile.fromDocument(uuid, joinData);
         UUID proxy;
         Document onlineData;
         if (joinData == null) {
             // new player!
-            rank = Rank.GUEST;
             proxy = UUID.randomUUID();
             onlineData = new Document();
+        } else if (profile.getOnlineData() == null) {
+            throw new Exception("Player isn't online!");
         } else {
-            rank = joinData.containsKey("rank") ? Rank.fromString(joinData.getString("rank")) : Rank.GUEST;
-            if (joinData.containsKey("tags")) {
-                joinData.get("tags", ArrayList.class).forEach(o -> tags.add(RankTag.fromString((String) o)));
-            }
-            if (!joinData.containsKey("onlineData")) {
-                throw new Exception("Player isn't online!");
-            } else {
-                onlineData = (Document) joinData.get("onlineData");
-                proxy = UUID.fromString(onlineData.getString("proxy"));
-            }
+            onlineData = profile.getOnlineData();
+            proxy = UUID.fromString(onlineData.getString("proxy"));
         }
-        CPlayer player = new CorePlayer(uuid, name, rank, tags, "en_us");
+        CPlayer player = new CorePlayer(uuid, name, profile.getRank(), profile.getTags(), "en_us");
         player.getRegistry().addEntry("proxy", proxy);
         player.getRegistry().addEntry("onlineData", onlineData);
-        onlinePlayers.put(uuid, player);
+        // Consumed by playerJoined so the join doesn't need any more queries
+        player.getRegistry().addEntry("profile", profile);
+        onlinePlayers.add(player);
+        Core.getMongoHandler().trackPlayer(uuid);
     }
 
     @Override
@@ -91,6 +97,9 @@ public class CorePlayerManager implements CPlayerManager {
 
         // Async Task
         Core.runTaskAsynchronously(Core.getInstance(), () -> {
+            PlayerProfile profile = (PlayerProfile) corePlayer.getRegistry().removeEntry("profile");
+            if (profile == null) profile = Core.getMongoHandler().getPlayerProfile(corePlayer.getUniqueId());
+
             // Cache Skin
             WrappedGameProfile wrappedGameProfile = WrappedGameProfile.fromPlayer(player);
             Optional<WrappedSignedProperty> propertyOptional = wrappedGameProfile.getProperties().get("textures").stream().findFirst();
@@ -99,18 +108,18 @@ public class CorePlayerManager implements CPlayerManager {
                 corePlayer.setTextureValue(property.getValue());
                 corePlayer.setTextureSignature(property.getSignature());
             }
-            Core.getMongoHandler().cacheSkin(corePlayer.getUniqueId(), corePlayer.getTextureValue(), corePlayer.getTextureSignature());
+            if (profile.isSkinOutdated(corePlayer.getTextureValue(), corePlayer.getTextureSignature())) {
+                Core.getMongoHandler().cacheSkin(corePlayer.getUniqueId(), corePlayer.getTextureValue(), corePlayer.getTextureSignature());
+            }
 
             // Achievements
-            List<Integer> ids = Core.getMongoHandler().getAchievements(corePlayer.getUniqueId());
-            corePlayer.setAchievementManager(new CorePlayerAchievementManager(corePlayer, ids));
+            corePlayer.setAchievementManager(new CorePlayerAchievementManager(corePlayer, profile.getAchievements()));
             Core.getCraftingMenu().update(corePlayer, 2, Core.getCraftingMenu().getAchievement(corePlayer));
-            corePlayer.loadHonor(Core.getMongoHandler().getHonor(corePlayer.getUniqueId()));
+            corePlayer.loadHonor(profile.getHonor());
             corePlayer.setPreviousHonorLevel(Core.getHonorManager().getLevel(corePlayer.getHonor()).getLevel());
             corePlayer.giveAchievement(0);
             Core.getHonorManager().displayHonor(corePlayer, true);
-            Object packObject = Core.getMongoHandler().getOnlineDataValue(corePlayer.getUniqueId(), "resourcePack");
-            String pack = packObject == null ? "none" : (String) packObject;
+            String pack = profile.getResourcePack();
             Core.runTask(() -> new CurrentPackReceivedEvent(corePlayer, pack).call());
         });
 
@@ -140,15 +149,12 @@ public class CorePlayerManager implements CPlayerManager {
         if (uuid == null) return;
         CPlayer cPlayer = getPlayer(uuid);
         if (cPlayer == null) return;
-        Core.runTask(Core.getInstance(), () -> {
-            for (CPlayer otherPlayer : Core.getPlayerManager().getOnlinePlayers()) {
-                cPlayer.getScoreboard().removePlayerTag(otherPlayer);
-                otherPlayer.getScoreboard().removePlayerTag(cPlayer);
-            }
-        });
+        Core.runTask(Core.getInstance(), () -> Core.getNametagManager().removePlayer(cPlayer));
         cPlayer.resetManagers();
         cPlayer.setStatus(PlayerStatus.LEFT);
         onlinePlayers.remove(cPlayer.getUniqueId());
+        // Flushed before the player is let go, so the next server doesn't load their parks and creative data first
+        Core.getMongoHandler().untrackPlayer(uuid);
     }
 
     @Override
@@ -171,6 +177,9 @@ public class CorePlayerManager implements CPlayerManager {
 
     @Override
     public CPlayer getPlayer(String name) {
+        CPlayer player = onlinePlayers.getByName(name);
+        if (player != null) return player;
+        // Fall back to Bukkit's partial name matching
         Player p = Bukkit.getPlayer(name);
         if (p == null)
             return null;
@@ -179,7 +188,22 @@ public class CorePlayerManager implements CPlayerManager {
 
     @Override
     public List<CPlayer> getOnlinePlayers() {
-        return new ArrayList<>(onlinePlayers.values());
+        return new ArrayList<>(Arrays.asList(onlinePlayers.snapshot()));
+    }
+
+    @Override
+    public CPlayer[] getOnlinePlayerSnapshot() {
+        return onlinePlayers.snapshot();
+    }
+
+    @Override
+    public CPlayer[] getOnlinePlayers(Rank rank) {
+        return onlinePlayers.getByRank(rank);
+    }
+
+    @Override
+    public void rankChanged(CPlayer player) {
+        onlinePlayers.invalidateRanks();
     }
 
     @Override
@@ -190,14 +214,12 @@ public class CorePlayerManager implements CPlayerManager {
             player.setOp(op);
         }
 
-        player.getScoreboard().setupPlayerTags();
         defaultScoreboard.setup(player);
         Core.runTaskLater(Core.getInstance(), () -> {
-            for (CPlayer otherPlayer : Core.getPlayerManager().getOnlinePlayers()) {
-                if (player.getScoreboard() != null) player.getScoreboard().addPlayerTag(otherPlayer);
-                if (!player.getUniqueId().equals(otherPlayer.getUniqueId()) &&
-                        otherPlayer.getScoreboard() != null) otherPlayer.getScoreboard().addPlayerTag(player);
-            }
+            if (player.getStatus() != PlayerStatus.JOINED || player.getScoreboard() == null) return;
+            // The player's team is shared by every viewer, so only their own membership and view need updating
+            player.getScoreboard().setupPlayerTags();
+            player.getScoreboard().addPlayerTag(player);
         }, 20L);
     }
 
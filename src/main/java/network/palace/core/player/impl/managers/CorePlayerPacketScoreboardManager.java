@@ -0,0 +1,246 @@
+package network.palace.core.player.impl.managers;
+
+import com.comphenix.protocol.wrappers.EnumWrappers;
+import lombok.Getter;
+import network.palace.core.Core;
+import network.palace.core.packets.server.scoreboard.WrapperPlayServerScoreboardDisplayObjective;
+import network.palace.core.packets.server.scoreboard.WrapperPlayServerScoreboardObjective;
+import network.palace.core.packets.server.scoreboard.WrapperPlayServerScoreboardScore;
+import network.palace.core.packets.server.scoreboard.WrapperPlayServerScoreboardTeam;
+import network.palace.core.player.CPlayer;
+import network.palace.core.player.CPlayerScoreboardManager;
+import org.bukkit.ChatColor;
+
+import java.util.*;
+
+/**
+ * Sidebar manager that draws the sidebar with packets instead of a Bukkit scoreboard
+ * <p>
+ * Every line is a fixed, invisible score entry whose text comes from the prefix and suffix of its own team. Changing a
+ * line's text only updates that team, so the line doesn't flicker and no score is removed or re-added. Changes are
+ * compared against what the client was last sent and flushed once per tick.
+ *
+ * @implNote Lines are limited to 32 characters, 16 for the prefix and 16 for the suffix including the carried colors
+ */
+public class CorePlayerPacketScoreboardManager implements CPlayerScoreboardManager {
+    private static final String OBJECTIVE = "coresidebar";
+    private static final int PART_LENGTH = 16;
+
+    private static final Set<CorePlayerPacketScoreboardManager> dirty = new LinkedHashSet<>();
+    private static boolean timerStarted = false;
+
+    private final CPlayer player;
+
+    private final Map<Integer, String> lines = new TreeMap<>();
+    private final Map<Integer, String> sent = new HashMap<>();
+    private String title = "";
+    private String sentTitle = null;
+    @Getter private boolean isSetup = false;
+    private boolean tagsVisible = true;
+
+    /**
+     * Instantiates a new packet scoreboard manager.
+     *
+     * @param player the player
+     */
+    public CorePlayerPacketScoreboardManager(CPlayer player) {
+        this.player = player;
+    }
+
+    @Override
+    public CPlayerScoreboardManager set(int id, String text) {
+        if (text == null) text = "";
+        if (text.equals(lines.get(id))) return this;
+        lines.put(id, text);
+        markDirty();
+        return this;
+    }
+
+    @Override
+    public CPlayerScoreboardManager setBlank(int id) {
+        // Every line has its own entry, so blank lines don't have to be unique
+        return set(id, "");
+    }
+
+    @Override
+    public CPlayerScoreboardManager remove(int id) {
+        if (lines.remove(id) != null) markDirty();
+        return this;
+    }
+
+    @Override
+    public CPlayerScoreboardManager title(String title) {
+        if (title == null) return this;
+        isSetup = true;
+        if (title.equals(this.title) && sentTitle != null) return this;
+        this.title = title;
+        markDirty();
+        return this;
+    }
+
+    /**
+     * Send the changes since the last flush to the player
+     */
+    private void flush() {
+        if (player.getBukkitPlayer() == null) return;
+        if (sentTitle == null) {
+            if (!isSetup) return;
+            objective(WrapperPlayServerScoreboardObjective.Mode.ADD_OBJECTIVE);
+            WrapperPlayServerScoreboardDisplayObjective display = new WrapperPlayServerScoreboardDisplayObjective();
+            display.setPosition(WrapperPlayServerScoreboardDisplayObjective.SIDEBAR);
+            display.setScoreName(OBJECTIVE);
+            display.sendPacket(player);
+            sentTitle = title;
+        } else if (!sentTitle.equals(title)) {
+            objective(WrapperPlayServerScoreboardObjective.Mode.UPDATE_VALUE);
+            sentTitle = title;
+        }
+        Iterator<Map.Entry<Integer, String>> it = sent.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, String> e = it.next();
+            if (lines.containsKey(e.getKey())) continue;
+            score(e.getKey(), EnumWrappers.ScoreboardAction.REMOVE);
+            team(e.getKey(), null, WrapperPlayServerScoreboardTeam.Mode.TEAM_REMOVED);
+            it.remove();
+        }
+        for (Map.Entry<Integer, String> e : lines.entrySet()) {
+            String previous = sent.get(e.getKey());
+            if (previous == null) {
+                team(e.getKey(), e.getValue(), WrapperPlayServerScoreboardTeam.Mode.TEAM_CREATED);
+                score(e.getKey(), EnumWrappers.ScoreboardAction.CHANGE);
+            } else if (!previous.equals(e.getValue())) {
+                team(e.getKey(), e.getValue(), WrapperPlayServerScoreboardTeam.Mode.TEAM_UPDATED);
+            } else {
+                continue;
+            }
+            sent.put(e.getKey(), e.getValue());
+        }
+    }
+
+    private void objective(int mode) {
+        WrapperPlayServerScoreboardObjective packet = new WrapperPlayServerScoreboardObjective();
+        packet.setName(OBJECTIVE);
+        packet.setMode(mode);
+        packet.setDisplayName(title.length() > 32 ? title.substring(0, 32) : title);
+        packet.setHealthDisplay(WrapperPlayServerScoreboardObjective.HealthDisplay.INTEGER);
+        packet.sendPacket(player);
+    }
+
+    private void score(int id, EnumWrappers.ScoreboardAction action) {
+        WrapperPlayServerScoreboardScore packet = new WrapperPlayServerScoreboardScore();
+        packet.setScoreName(entry(id));
+        packet.setObjectiveName(OBJECTIVE);
+        packet.setScoreboardAction(action);
+        packet.setValue(id);
+        packet.sendPacket(player);
+    }
+
+    private void team(int id, String text, int mode) {
+        WrapperPlayServerScoreboardTeam packet = new WrapperPlayServerScoreboardTeam();
+        packet.setName("csb" + Integer.toHexString(id));
+        packet.setMode(mode);
+        if (mode == WrapperPlayServerScoreboardTeam.Mode.TEAM_CREATED || mode == WrapperPlayServerScoreboardTeam.Mode.TEAM_UPDATED) {
+            String[] parts = split(text);
+            packet.setDisplayName("");
+            packet.setPrefix(parts[0]);
+            packet.setSuffix(parts[1]);
+            packet.setColor(ChatColor.RESET);
+            packet.setNameTagVisibility("always");
+            packet.setCollisionRule("always");
+            packet.setPackOptionData(0);
+        }
+        if (mode == WrapperPlayServerScoreboardTeam.Mode.TEAM_CREATED)
+            packet.setPlayers(Collections.singletonList(entry(id)));
+        packet.sendPacket(player);
+    }
+
+    /**
+     * Get the invisible score entry for a line, made of one color code for each hex digit of the id
+     */
+    private static String entry(int id) {
+        StringBuilder builder = new StringBuilder();
+        for (char c : Integer.toHexString(id).toCharArray()) {
+            builder.append(ChatColor.COLOR_CHAR).append(c);
+        }
+        return builder.append(ChatColor.RESET).toString();
+    }
+
+    /**
+     * Split a line into a team prefix and suffix, carrying the prefix's colors over to the suffix
+     */
+    private static String[] split(String text) {
+        if (text.length() <= PART_LENGTH) return new String[]{text, ""};
+        int cut = PART_LENGTH;
+        if (text.charAt(cut - 1) == ChatColor.COLOR_CHAR) cut--;
+        String prefix = text.substring(0, cut);
+        String suffix = ChatColor.getLastColors(prefix) + text.substring(cut);
+        if (suffix.length() > PART_LENGTH) suffix = suffix.substring(0, PART_LENGTH);
+        if (suffix.endsWith(String.valueOf(ChatColor.COLOR_CHAR))) suffix = suffix.substring(0, suffix.length() - 1);
+        return new String[]{prefix, suffix};
+    }
+
+    private void markDirty() {
+        if (!timerStarted) {
+            timerStarted = true;
+            Core.runTaskTimer(Core.getInstance(), CorePlayerPacketScoreboardManager::flushAll, 1L, 1L);
+        }
+        dirty.add(this);
+    }
+
+    private static void flushAll() {
+        if (dirty.isEmpty()) return;
+        List<CorePlayerPacketScoreboardManager> managers = new ArrayList<>(dirty);
+        dirty.clear();
+        for (CorePlayerPacketScoreboardManager manager : managers) {
+            try {
+                manager.flush();
+            } catch (Exception e) {
+                Core.logMessage("Scoreboard", "Error updating sidebar for " + manager.player.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void setupPlayerTags() {
+        Core.getNametagManager().addViewer(player);
+        Core.getNametagManager().setTagsVisible(player, tagsVisible);
+    }
+
+    @Override
+    public void addPlayerTag(CPlayer otherPlayer) {
+        Core.getNametagManager().addMember(otherPlayer);
+        Core.getNametagManager().showMember(player, otherPlayer);
+    }
+
+    @Override
+    public void removePlayerTag(CPlayer otherPlayer) {
+        Core.getNametagManager().hideMember(player, otherPlayer);
+    }
+
+    /**
+     * Remove every line from the sidebar
+     */
+    @Override
+    public void clear() {
+        if (lines.isEmpty()) return;
+        lines.clear();
+        markDirty();
+    }
+
+    @Override
+    public void toggleTags() {
+        tagsVisible = !tagsVisible;
+        Core.getNametagManager().setTagsVisible(player, tagsVisible);
+    }
+
+    @Override
+    public void toggleTags(boolean hidden) {
+        if (tagsVisible == !hidden) return;
+        toggleTags();
+    }
+
+    @Override
+    public boolean getTagsVisible() {
+        return tagsVisible;
+    }
+}
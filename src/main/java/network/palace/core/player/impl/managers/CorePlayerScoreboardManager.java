@@ -1,20 +1,17 @@
 package network.palace.core.player.impl.managers;
 
 import lombok.Getter;
+import network.palace.core.Core;
 import network.palace.core.player.CPlayer;
 import network.palace.core.player.CPlayerScoreboardManager;
-import network.palace.core.player.Rank;
-import network.palace.core.player.RankTag;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.scoreboard.DisplaySlot;
 import org.bukkit.scoreboard.Objective;
 import org.bukkit.scoreboard.Scoreboard;
-import org.bukkit.scoreboard.Team;
 
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -138,64 +135,34 @@ public class CorePlayerScoreboardManager implements CPlayerScoreboardManager {
     }
 
     /**
-     * Setup the player tags to prevent collision.
+     * Start showing the shared rank and tag teams to this player
      */
     @Override
     public void setupPlayerTags() {
-        if (scoreboard == null) setup();
-        for (Rank rank : Rank.values()) {
-            if (scoreboard.getTeam(rank.getScoreboardPrefix() + rank.getShortName()) != null) continue;
-            Team team = scoreboard.registerNewTeam(rank.getScoreboardPrefix() + rank.getShortName());
-            team.setPrefix(rank.getFormattedName() + " ");
-            team.setColor(rank.getTagColor());
-            team.setOption(Team.Option.COLLISION_RULE, Team.OptionStatus.NEVER);
-            team.setSuffix("");
-        }
+        Core.getNametagManager().addViewer(player);
+        Core.getNametagManager().setTagsVisible(player, tagsVisible);
     }
 
     /**
-     * Add a tag to a player
+     * Show a player's tag to this player
      *
      * @param otherPlayer the other player
+     * @implNote The other player is put in the shared team for their rank and tags, which is the same for every viewer
      */
     @Override
     public void addPlayerTag(CPlayer otherPlayer) {
-        if (scoreboard == null) setup();
-        if (otherPlayer == null || otherPlayer.getRank() == null || otherPlayer.getTags() == null) return;
-        String teamName = teamName(otherPlayer.getRank(), otherPlayer.getTags());
-        Team team = scoreboard.getTeam(teamName);
-
-        if (team == null) {
-            team = scoreboard.registerNewTeam(teamName);
-            team.setPrefix(otherPlayer.getRank().getFormattedName() + " ");
-            team.setSuffix(RankTag.formatScoreboardSuffix(otherPlayer.getTags()));
-            team.setColor(otherPlayer.getRank().getTagColor());
-            team.setOption(Team.Option.COLLISION_RULE, Team.OptionStatus.NEVER);
-            team.addEntry(otherPlayer.getName());
-        } else if (!team.hasEntry(otherPlayer.getName())) {
-            team.addEntry(otherPlayer.getName());
-        }
+        Core.getNametagManager().addMember(otherPlayer);
+        Core.getNametagManager().showMember(player, otherPlayer);
     }
 
     /**
-     * Remove a tag from a player
+     * Stop showing a player's tag to this player
      *
      * @param otherPlayer the other player
      */
     @Override
     public void removePlayerTag(CPlayer otherPlayer) {
-        if (scoreboard == null) setup();
-        if (otherPlayer == null || otherPlayer.getRank() == null) return;
-        String teamName = teamName(otherPlayer.getRank(), otherPlayer.getTags());
-        Team team = scoreboard.getTeam(teamName);
-
-        if (team == null) return;
-        team.removeEntry(otherPlayer.getName());
-    }
-
-    private String teamName(Rank rank, List<RankTag> tags) {
-        tags.sort((rankTag, t1) -> t1.getId() - rankTag.getId());
-        return rank.getScoreboardTeamName() + (tags.isEmpty() ? "" : tags.get(0).getShortScoreboardTag());
+        Core.getNametagManager().hideMember(player, otherPlayer);
     }
 
     /**
@@ -209,16 +176,7 @@ public class CorePlayerScoreboardManager implements CPlayerScoreboardManager {
     @Override
     public void toggleTags() {
         tagsVisible = !tagsVisible;
-        if (scoreboard == null || scoreboard.getTeams() == null) return;
-        if (tagsVisible) {
-            for (Team team : scoreboard.getTeams()) {
-                team.setOption(Team.Option.NAME_TAG_VISIBILITY, Team.OptionStatus.ALWAYS);
-            }
-        } else {
-            for (Team team : scoreboard.getTeams()) {
-                team.setOption(Team.Option.NAME_TAG_VISIBILITY, Team.OptionStatus.NEVER);
-            }
-        }
+        Core.getNametagManager().setTagsVisible(player, tagsVisible);
     }
 
     @Override
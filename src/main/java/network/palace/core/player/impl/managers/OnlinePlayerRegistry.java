@@ -0,0 +1,118 @@
+package network.palace.core.player.impl.managers;
+
+import network.palace.core.player.CPlayer;
+import network.palace.core.player.Rank;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe registry of the players online on this server
+ * <p>
+ * Lookups are lock-free. Every join or quit publishes a new immutable snapshot array, so iterating online players
+ * never copies or locks, no matter which thread it's done from.
+ */
+public class OnlinePlayerRegistry {
+    private static final CPlayer[] EMPTY = new CPlayer[0];
+
+    private final Map<UUID, CPlayer> byUuid = new ConcurrentHashMap<>();
+    private final Map<String, CPlayer> byName = new ConcurrentHashMap<>();
+    private volatile CPlayer[] snapshot = EMPTY;
+    // Rebuilt lazily, null means a join, quit or rank change happened since it was last built
+    private volatile Map<Rank, CPlayer[]> byRank = null;
+
+    /**
+     * Add a player, replacing any player with the same uuid
+     *
+     * @param player the player
+     */
+    public synchronized void add(CPlayer player) {
+        CPlayer previous = byUuid.put(player.getUniqueId(), player);
+        if (previous != null) byName.remove(key(previous.getName()), previous);
+        byName.put(key(player.getName()), player);
+        publish();
+    }
+
+    /**
+     * Remove a player
+     *
+     * @param uuid the uuid of the player
+     * @return the removed player, or null if they weren't registered
+     */
+    public synchronized CPlayer remove(UUID uuid) {
+        CPlayer player = byUuid.remove(uuid);
+        if (player == null) return null;
+        byName.remove(key(player.getName()), player);
+        publish();
+        return player;
+    }
+
+    public CPlayer get(UUID uuid) {
+        return byUuid.get(uuid);
+    }
+
+    /**
+     * Get a player by their exact name, ignoring case
+     *
+     * @param name the name
+     * @return the player, or null if no online player has that name
+     */
+    public CPlayer getByName(String name) {
+        return byName.get(key(name));
+    }
+
+    /**
+     * Get every online player
+     *
+     * @return the current snapshot, which must not be modified
+     */
+    public CPlayer[] snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get the online players with a rank
+     *
+     * @param rank the rank
+     * @return the players, which must not be modified
+     */
+    public CPlayer[] getByRank(Rank rank) {
+        Map<Rank, CPlayer[]> index = byRank;
+        if (index == null) index = buildRankIndex();
+        return index.getOrDefault(rank, EMPTY);
+    }
+
+    /**
+     * Rebuild the rank index on its next use
+     *
+     * @implNote Call this whenever an online player's rank changes
+     */
+    public synchronized void invalidateRanks() {
+        byRank = null;
+    }
+
+    public int size() {
+        return snapshot.length;
+    }
+
+    private void publish() {
+        snapshot = byUuid.values().toArray(EMPTY);
+        byRank = null;
+    }
+
+    private synchronized Map<Rank, CPlayer[]> buildRankIndex() {
+        if (byRank != null) return byRank;
+        Map<Rank, List<CPlayer>> lists = new EnumMap<>(Rank.class);
+        for (CPlayer player : snapshot) {
+            lists.computeIfAbsent(player.getRank(), r -> new ArrayList<>()).add(player);
+        }
+        Map<Rank, CPlayer[]> index = new EnumMap<>(Rank.class);
+        lists.forEach((rank, players) -> index.put(rank, players.toArray(EMPTY)));
+        byRank = index;
+        return index;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}